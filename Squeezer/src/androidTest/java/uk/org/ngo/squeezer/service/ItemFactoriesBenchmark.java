@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import uk.org.ngo.squeezer.model.JiveItem;
+import uk.org.ngo.squeezer.model.Song;
+
+/**
+ * Times creating a page of items with the registered factories of {@link ItemFactories}, and with
+ * the reflective constructor they replace.
+ * <p>
+ * This is a measurement, not a test: it runs on a device with the app, and reports the timings
+ * to the log (tag "ItemFactoriesBenchmark") without asserting on them.
+ */
+public class ItemFactoriesBenchmark extends TestCase {
+    private static final String TAG = "ItemFactoriesBenchmark";
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 100;
+
+    public void testJiveItem() {
+        List<Map<String, Object>> page = new ArrayList<>(PAGE_SIZE);
+        Map<String, Object> base = baseRecord();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page.add(albumRecord(i, base));
+        }
+        compare(JiveItem.class, page);
+    }
+
+    public void testSong() {
+        List<Map<String, Object>> page = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page.add(songRecord(i));
+        }
+        compare(Song.class, page);
+    }
+
+    private static <T> void compare(Class<T> dataType, List<Map<String, Object>> page) {
+        Function<Map<String, Object>, T> registered = ItemFactories.get(dataType);
+        Function<Map<String, Object>, T> reflective = ItemFactories.reflective(dataType);
+
+        run(page, registered, WARMUP);
+        run(page, reflective, WARMUP);
+        long registeredNanos = run(page, registered, ITERATIONS);
+        long reflectiveNanos = run(page, reflective, ITERATIONS);
+
+        Log.i(TAG, String.format(Locale.ROOT, "%s, page of %d: factory %.2f ms, reflection %.2f ms",
+                dataType.getSimpleName(), page.size(),
+                registeredNanos / 1e6 / ITERATIONS, reflectiveNanos / 1e6 / ITERATIONS));
+    }
+
+    private static <T> long run(List<Map<String, Object>> page, Function<Map<String, Object>, T> factory, int iterations) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            List<T> items = new ArrayList<>(page.size());
+            for (Map<String, Object> record : page) {
+                items.add(factory.apply(record));
+            }
+            assertEquals(page.size(), items.size());
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    /** @return The base record of a "browselibrary items" response for albums */
+    private static Map<String, Object> baseRecord() {
+        Map<String, Object> goParams = new HashMap<>();
+        goParams.put("menu", "track");
+        goParams.put("mode", "tracks");
+        Map<String, Object> go = new HashMap<>();
+        go.put("cmd", new Object[]{"browselibrary", "items"});
+        go.put("params", goParams);
+        go.put("itemsParams", "commonParams");
+
+        Map<String, Object> play = new HashMap<>();
+        play.put("cmd", new Object[]{"jiveplaytrackalbum"});
+        play.put("itemsParams", "commonParams");
+        play.put("nextWindow", "nowPlaying");
+
+        Map<String, Object> actions = new HashMap<>();
+        actions.put("go", go);
+        actions.put("play", play);
+
+        Map<String, Object> window = new HashMap<>();
+        window.put("windowStyle", "icon_list");
+
+        Map<String, Object> base = new HashMap<>();
+        base.put("actions", actions);
+        base.put("window", window);
+        return base;
+    }
+
+    private static Map<String, Object> albumRecord(int i, Map<String, Object> base) {
+        Map<String, Object> commonParams = new HashMap<>();
+        commonParams.put("album_id", String.valueOf(i));
+        commonParams.put("library_id", "3fd8c2a1");
+
+        Map<String, Object> presetParams = new HashMap<>();
+        presetParams.put("favorites_title", "Album " + i);
+        presetParams.put("favorites_url", "db:album.title=Album%20" + i);
+        presetParams.put("favorites_type", "audio");
+        presetParams.put("icon", "/music/" + i + "/cover");
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", String.valueOf(i));
+        record.put("text", "Album " + i + "\nArtist " + i);
+        record.put("textkey", "A");
+        record.put("icon-id", "/music/" + i + "/cover");
+        record.put("commonParams", commonParams);
+        record.put("presetParams", presetParams);
+        record.put("favorites_url", "db:album.title=Album%20" + i);
+        record.put("base", base);
+        return record;
+    }
+
+    private static Map<String, Object> songRecord(int i) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", String.valueOf(i));
+        record.put("title", "Song " + i);
+        record.put("tracknum", String.valueOf(i % 20 + 1));
+        record.put("artist", "Artist " + i);
+        record.put("artist_ids", String.valueOf(i));
+        record.put("album", "Album " + i / 20);
+        record.put("album_id", String.valueOf(i / 20));
+        record.put("duration", "245.3");
+        record.put("year", "1999");
+        record.put("url", "file:///music/" + i + ".flac");
+        return record;
+    }
+}
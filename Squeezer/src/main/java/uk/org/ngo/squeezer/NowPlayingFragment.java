@@ -870,6 +870,12 @@ public class NowPlayingFragment extends Fragment  implements OnCrollerChangeList
         } else {
             ImageFetcher.getInstance(mActivity).loadImage(song.getIcon(), albumArt);
         }
+
+        // Have the artwork of the next song ready when the song changes
+        CurrentPlaylistItem nextSong = playerState.getNextSong();
+        if (nextSong != null && nextSong.useIcon()) {
+            ImageFetcher.getInstance(mActivity).prefetch(nextSong.getIcon(), albumArt.getWidth(), albumArt.getHeight());
+        }
     }
 
     private void updateVolumeInfo() {
@@ -17,16 +17,18 @@
 package uk.org.ngo.squeezer.framework;
 
 import android.os.Parcelable;
-import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.lang.reflect.Field;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.model.Item;
@@ -59,13 +61,32 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
      */
     private int count;
 
-    private final SparseArray<T[]> pages = new SparseArray<>();
+    /** Received items by page. */
+    private final ItemPages<T> pages;
 
     /**
      * Number of elements to be fetched at a time
      */
     private final int pageSize;
 
+    /** Estimated heap size of a received item, with its actions, window and record. */
+    private static final int ESTIMATED_ITEM_SIZE = 4 * 1024;
+
+    /** Received items may use up to this fraction of the heap. */
+    private static final int HEAP_FRACTION = 16;
+
+    /** Always keep the page in view and its neighbours. */
+    private static final int MIN_PAGES = 3;
+
+    /**
+     * Maximum number of pages to keep. When more pages are received, the pages furthest from the
+     * viewport are evicted, and ordered again if they come back into view.
+     */
+    private final int maxPages;
+
+    /** Page number of the most recently bound item. */
+    private int viewportPage;
+
     /**
      * Creates a new adapter. Initially the item list is populated with items displaying the
      * localized "loading" text. Call {@link #update(int, int, List)} as items arrives from
@@ -77,7 +98,8 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
         this.activity = activity;
         this.orderer = orderer;
         pageSize = getActivity().getResources().getInteger(R.integer.PageSize);
-        pages.clear();
+        maxPages = (int) Math.max(MIN_PAGES, Runtime.getRuntime().maxMemory() / HEAP_FRACTION / ((long) ESTIMATED_ITEM_SIZE * pageSize));
+        pages = new ItemPages<>(pageSize, this::arrayInstance);
     }
 
     /**
@@ -88,7 +110,7 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
     }
 
     private int pageNumber(int position) {
-        return position / pageSize;
+        return pages.pageNumber(position);
     }
 
     /**
@@ -111,6 +133,7 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
 
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
+        viewportPage = pageNumber(position);
         T item = getItem(position);
         holder.bindView(item);
     }
@@ -136,36 +159,23 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
         return count;
     }
 
-    private T[] getPage(int position) {
-        int pageNumber = pageNumber(position);
-        T[] page = pages.get(pageNumber);
-        if (page == null) {
-            pages.put(pageNumber, page = arrayInstance(pageSize));
-        }
-        return page;
-    }
-
-    private void setItems(int start, List<T> items) {
-        T[] page = getPage(start);
-        int offset = start % pageSize;
-        for (T item : items) {
-            if (offset >= pageSize) {
-                start += offset;
-                page = getPage(start);
-                offset = 0;
-            }
-            page[offset++] = item;
-        }
-    }
-
     public T getItem(int position) {
-        T item = getPage(position)[position % pageSize];
+        T item = peekItem(position);
         if (item == null) {
             orderer.maybeOrderPage(pageNumber(position) * pageSize);
         }
         return item;
     }
 
+    /**
+     * @return The item at the supplied position, or null if it has not been received yet. Unlike
+     * {@link #getItem(int)} this does not order the page of the item.
+     */
+    @Nullable
+    public T peekItem(int position) {
+        return pages.get(position);
+    }
+
     @Override
     public long getItemId(int position) {
         return position;
@@ -190,7 +200,7 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
     public void update(int count, int start, List<T> items) {
         boolean countUpdated = (count == 0 || count != getItemCount());
 
-        setItems(start, items);
+        pages.setItems(start, items);
         if (countUpdated) {
             this.count = count;
             onCountUpdated();
@@ -198,71 +208,83 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
         } else {
             notifyItemRangeChanged(start, items.size());
         }
+        trimPages();
+    }
+
+    /**
+     * Evict the pages furthest from the viewport, until the number of pages is within the budget.
+     * The evicted pages are not in view, so there is nothing to notify.
+     */
+    private void trimPages() {
+        while (pages.size() > maxPages) {
+            int first = pages.firstPage();
+            int last = pages.lastPage();
+            evictPage((viewportPage - first > last - viewportPage) ? first : last);
+        }
+    }
+
+    private void evictPage(int pageNumber) {
+        pages.evict(pageNumber);
+        orderer.onPageEvicted(pageNumber * pageSize);
+    }
+
+    /**
+     * Evict pages which are missing items after a move, and notify the change, so the items in
+     * view are ordered again.
+     */
+    private void evictPages(Set<Integer> pageNumbers) {
+        for (int pageNumber : pageNumbers) {
+            evictPage(pageNumber);
+            int pagePosition = pageNumber * pageSize;
+            if (pagePosition < count) {
+                notifyItemRangeChanged(pagePosition, Math.min(pageSize, count - pagePosition));
+            }
+        }
     }
 
     /**
      * Move the item at the specified position to the new position and notify the change.
+     * <p>
+     * Only the items between the two positions are shifted.
      */
     public void moveItem(int fromPosition, int toPosition) {
         T item = getItem(fromPosition);
-        remove(fromPosition);
-        insert(toPosition, item);
+        Set<Integer> incomplete = new HashSet<>();
+        if (fromPosition < toPosition) {
+            pages.shiftDown(fromPosition, toPosition, incomplete);
+        } else if (fromPosition > toPosition) {
+            pages.shiftUp(toPosition, fromPosition, incomplete);
+        }
+        if (pages.set(toPosition, item) && item == null) {
+            incomplete.add(pageNumber(toPosition));
+        }
         notifyItemMoved(fromPosition, toPosition);
+        evictPages(incomplete);
     }
 
     /**
      * Remove the item at the specified position, update the count and notify the change.
      */
     public void removeItem(int position) {
-        remove(position);
+        Set<Integer> incomplete = new HashSet<>();
+        pages.shiftDown(position, count - 1, incomplete);
+        pages.set(count - 1, null);
         count--;
         onCountUpdated();
         notifyItemRemoved(position);
+        evictPages(incomplete);
     }
 
     /**
      * Insert an item at the specified position, update the count and notify the change.
      */
     public void insertItem(int position, T item) {
-        insert(position, item);
+        Set<Integer> incomplete = new HashSet<>();
+        pages.insert(position, item, count, incomplete);
         count++;
         onCountUpdated();
         notifyItemInserted(position);
-    }
-
-    private void remove(int position) {
-        T[] page = getPage(position);
-        int offset = position % pageSize;
-        while (position++ <= count) {
-            if (offset == pageSize - 1) {
-                T[] nextPage = getPage(position);
-                page[offset] = nextPage[0];
-                offset = 0;
-                page = nextPage;
-            } else {
-                page[offset] = page[offset+1];
-                offset++;
-            }
-        }
-
-    }
-
-    private void insert(int position, T item) {
-        int n = count;
-        T[] page = getPage(n);
-        int offset = n % pageSize;
-        while (n-- > position) {
-            if (offset == 0) {
-                T[] nextPage = getPage(n);
-                offset = pageSize - 1;
-                page[0] = nextPage[offset];
-                page = nextPage;
-            } else {
-                page[offset] = page[offset-1];
-                offset--;
-            }
-        }
-        page[offset] = item;
+        evictPages(incomplete);
     }
 
     private T[] arrayInstance(int size) {
@@ -310,6 +332,13 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
 
     public interface PageOrderer {
         void maybeOrderPage(int pagePosition);
+
+        /**
+         * Called when a page is evicted to save memory. It must be ordered again by
+         * {@link #maybeOrderPage(int)} when it comes back into view.
+         */
+        default void onPageEvicted(int pagePosition) {
+        }
     }
 
 }
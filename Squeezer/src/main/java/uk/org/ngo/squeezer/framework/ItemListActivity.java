@@ -18,6 +18,7 @@ package uk.org.ngo.squeezer.framework;
 
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -32,6 +33,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -70,12 +73,29 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
     protected int mPageSize;
 
     /**
-     * The pages that have been requested from the server.
+     * The pages that have been requested from the server. Updated from the thread which receives
+     * the items, so it is synchronized.
      */
-    private final Set<Integer> mOrderedPages = new HashSet<>();
+    private final Set<Integer> mOrderedPages = Collections.synchronizedSet(new HashSet<>());
+
+    /** Minimum time between page orders while the list is scrolling. */
+    private static final long SCROLL_ORDER_INTERVAL_MS = 200;
+
+    /** While scrolling, order the pages the scroll reaches within this time at the current speed. */
+    private static final long SCROLL_LOOKAHEAD_MS = 1000;
+
+    /** Maximum number of pages to order ahead of the visible pages while scrolling. */
+    private static final int MAX_LOOKAHEAD_PAGES = 2;
+
+    /** Time of the last page order while scrolling. */
+    private long mScrollOrderTime;
+
+    /** First visible position at the last page order while scrolling. */
+    private int mScrollOrderPosition;
 
     /**
-     * The pages that have been received from the server
+     * The pages that have been received from the server, and not evicted from the adapter.
+     * Updated from the thread which receives the items, so it is synchronized.
      */
     private Set<Integer> mReceivedPages;
 
@@ -162,7 +182,7 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
 
         mReceivedPages = getRetainedValue(TAG_RECEIVED_PAGES);
         if (mReceivedPages == null) {
-            mReceivedPages = new HashSet<>();
+            mReceivedPages = Collections.synchronizedSet(new HashSet<>());
             putRetainedValue(TAG_RECEIVED_PAGES, mReceivedPages);
         }
     }
@@ -249,7 +269,19 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
      * @param pagePosition position in the list to start the fetch.
      */
     public void maybeOrderPage(int pagePosition) {
-        if (!mListScrolling && !mReceivedPages.contains(pagePosition) && !mOrderedPages
+        if (!mListScrolling) {
+            orderPageIfNeeded(pagePosition);
+        }
+    }
+
+    /**
+     * Orders a page worth of data, starting at the specified position, if it has not already been
+     * ordered, even if the list is scrolling.
+     *
+     * @param pagePosition position in the list to start the fetch.
+     */
+    private void orderPageIfNeeded(int pagePosition) {
+        if (!mReceivedPages.contains(pagePosition) && !mOrderedPages
                 .contains(pagePosition) && !mOrderedPagesBeforeHandshake.contains(pagePosition)) {
             ISqueezeService service = getService();
 
@@ -268,6 +300,14 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
         }
     }
 
+    /**
+     * Forget that the page was received, so it's ordered again when it comes back into view.
+     */
+    @Override
+    public void onPageEvicted(int pagePosition) {
+        mReceivedPages.remove(pagePosition);
+    }
+
     /**
      * Update the UI with the player change
      */
@@ -332,6 +372,77 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
         }
     }
 
+    /**
+     * Orders the pages the scroll is heading toward, while the list is scrolling.
+     * <p>
+     * The visible pages are ordered, and the pages ahead in the scroll direction which will be
+     * reached soon at the current speed. Orders are rate limited, as this is called for every
+     * scrolled frame. Orders for pages which are no longer near the visible rows, f.e. after a
+     * jump with the fast scroller, are cancelled.
+     *
+     * @param listView The listview being scrolled.
+     * @param dy The amount of vertical scroll.
+     */
+    private void orderPagesWhileScrolling(RecyclerView listView, int dy) {
+        long now = SystemClock.uptimeMillis();
+        if (now - mScrollOrderTime < SCROLL_ORDER_INTERVAL_MS) {
+            return;
+        }
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) listView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        int count = layoutManager.getItemCount();
+        if (first == RecyclerView.NO_POSITION || count == 0) {
+            return;
+        }
+
+        float speed = (float) Math.abs(first - mScrollOrderPosition) / (now - mScrollOrderTime);
+        int lookahead = (int) Math.min(speed * SCROLL_LOOKAHEAD_MS, MAX_LOOKAHEAD_PAGES * mPageSize);
+        mScrollOrderTime = now;
+        mScrollOrderPosition = first;
+
+        int firstPage = (Math.max(0, (dy < 0) ? first - lookahead : first) / mPageSize) * mPageSize;
+        int lastPage = (Math.min(count - 1, (dy > 0) ? last + lookahead : last) / mPageSize) * mPageSize;
+        cancelStaleOrders(firstPage - mPageSize, lastPage + mPageSize);
+
+        // Order the pages nearest the visible rows first
+        if (dy > 0) {
+            for (int pos = firstPage; pos <= lastPage; pos += mPageSize) {
+                orderPageIfNeeded(pos);
+            }
+        } else {
+            for (int pos = lastPage; pos >= firstPage; pos -= mPageSize) {
+                orderPageIfNeeded(pos);
+            }
+        }
+    }
+
+    /**
+     * Cancel the outstanding page orders outside the supplied range of pages. Orders for pages in
+     * the range are kept.
+     */
+    private void cancelStaleOrders(int firstPage, int lastPage) {
+        ISqueezeService service = getService();
+        if (service == null) {
+            return;
+        }
+
+        List<Integer> stalePages = new ArrayList<>();
+        synchronized (mOrderedPages) {
+            for (int pagePosition : mOrderedPages) {
+                if (pagePosition < firstPage || pagePosition > lastPage) {
+                    stalePages.add(pagePosition);
+                }
+            }
+        }
+        if (!stalePages.isEmpty()) {
+            Log.d(TAG, "Cancel stale page orders: " + stalePages);
+            service.cancelItemListRequests(this, firstPage, lastPage + mPageSize);
+            mOrderedPages.removeAll(stalePages);
+        }
+    }
+
     /**
      * Tracks items that have been received from the server.
      * <p>
@@ -396,7 +507,8 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
     /**
      * Tracks scrolling activity.
      * <p>
-     * When the list is idle, new pages of data are fetched from the server.
+     * While the list scrolls, the pages it is heading toward are fetched from the server. When
+     * the list is idle, the visible pages are fetched.
      */
     protected class ScrollListener extends RecyclerView.OnScrollListener {
 
@@ -422,5 +534,15 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
 
             mPrevScrollState = scrollState;
         }
+
+        /**
+         * Orders pages while the list is scrolling, see {@link #orderPagesWhileScrolling(RecyclerView, int)}.
+         */
+        @Override
+        public void onScrolled(@NonNull RecyclerView listView, int dx, int dy) {
+            if (dy != 0) {
+                orderPagesWhileScrolling(listView, dy);
+            }
+        }
     }
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.framework;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * The received items of an {@link ItemAdapter}, by page.
+ * <p>
+ * Not all pages are resident: pages are received when they come into view, and evicted when they
+ * are far from it. The items of a page are stored in a ring buffer, see {@link Page}, so
+ * inserting, removing or moving an item costs a constant time per page the items are shifted
+ * across, and at most half a page for the pages at the ends of the shift.
+ *
+ * @param <T> Type of the items
+ */
+class ItemPages<T> {
+    private final int pageSize;
+    private final IntFunction<T[]> newArray;
+
+    /** Resident pages by page number. */
+    private final TreeMap<Integer, Page<T>> pages = new TreeMap<>();
+
+    /**
+     * @param pageSize Number of items per page
+     * @param newArray Creates the array for the items of a page
+     */
+    ItemPages(int pageSize, IntFunction<T[]> newArray) {
+        this.pageSize = pageSize;
+        this.newArray = newArray;
+    }
+
+    int pageSize() {
+        return pageSize;
+    }
+
+    int pageNumber(int position) {
+        return position / pageSize;
+    }
+
+    /** @return The number of resident pages */
+    int size() {
+        return pages.size();
+    }
+
+    /** @return The number of the first resident page. There must be at least one. */
+    int firstPage() {
+        return pages.firstKey();
+    }
+
+    /** @return The number of the last resident page. There must be at least one. */
+    int lastPage() {
+        return pages.lastKey();
+    }
+
+    boolean isResident(int pageNumber) {
+        return pages.containsKey(pageNumber);
+    }
+
+    void clear() {
+        pages.clear();
+    }
+
+    void evict(int pageNumber) {
+        pages.remove(pageNumber);
+    }
+
+    /** Store the supplied items from the start position, creating their pages if necessary. */
+    void setItems(int start, List<T> items) {
+        Page<T> page = getOrCreatePage(start);
+        int offset = start % pageSize;
+        for (T item : items) {
+            if (offset >= pageSize) {
+                start += offset;
+                page = getOrCreatePage(start);
+                offset = 0;
+            }
+            page.set(offset++, item);
+        }
+    }
+
+    private Page<T> getOrCreatePage(int position) {
+        int pageNumber = pageNumber(position);
+        Page<T> page = pages.get(pageNumber);
+        if (page == null) {
+            pages.put(pageNumber, page = new Page<>(newArray.apply(pageSize)));
+        }
+        return page;
+    }
+
+    /** @return The item at the supplied position, or null if its page is not resident, or it has not been received. */
+    @Nullable
+    T get(int position) {
+        Page<T> page = pages.get(pageNumber(position));
+        return (page != null) ? page.get(position % pageSize) : null;
+    }
+
+    /**
+     * Set the item at the supplied position, if its page is resident.
+     *
+     * @return false if the page of the position is not resident
+     */
+    boolean set(int position, T item) {
+        Page<T> page = pages.get(pageNumber(position));
+        if (page == null) {
+            return false;
+        }
+        page.set(position % pageSize, item);
+        return true;
+    }
+
+    /**
+     * Insert the item at the supplied position, and shift the items after it one position up.
+     * When the list grows in to a new page, the page is created if the item which moves in to it
+     * is known.
+     *
+     * @param count The number of items before the insert
+     * @param incomplete Receives the page numbers of pages which should have received an item
+     *     from a page which is not resident, and of the page of the position if it is not resident
+     */
+    void insert(int position, T item, int count, Set<Integer> incomplete) {
+        if (count % pageSize == 0 && (position == count || isResident(pageNumber(count - 1)))) {
+            getOrCreatePage(count);
+        }
+        shiftUp(position, count, incomplete);
+        if (!set(position, item)) {
+            incomplete.add(pageNumber(position));
+        }
+    }
+
+    /**
+     * Shift the items after the supplied position, up to and including end, one position down.
+     * The item at the position is overwritten, and the item at end must be set by the caller.
+     * Pages which are not resident are skipped.
+     *
+     * @param incomplete Receives the page numbers of pages which should have received an item
+     *     from a page which is not resident
+     */
+    void shiftDown(int position, int end, Set<Integer> incomplete) {
+        int firstPage = pageNumber(position);
+        int lastPage = pageNumber(end);
+        for (int pageNumber = firstPage; pageNumber <= lastPage; pageNumber++) {
+            Page<T> page = pages.get(pageNumber);
+            if (page == null) {
+                continue;
+            }
+            int from = (pageNumber == firstPage) ? position % pageSize : 0;
+            if (pageNumber < lastPage) {
+                // The last item of the page moves in from the next page
+                Page<T> next = pages.get(pageNumber + 1);
+                if (next == null) {
+                    incomplete.add(pageNumber);
+                }
+                page.remove(from, (next != null) ? next.get(0) : null);
+            } else {
+                page.shiftDown(from, end % pageSize);
+            }
+        }
+    }
+
+    /**
+     * Shift the items from the supplied position, up to but not including end, one position up.
+     * The item at end is overwritten, and the item at the position must be set by the caller.
+     * Pages which are not resident are skipped.
+     *
+     * @param incomplete Receives the page numbers of pages which should have received an item
+     *     from a page which is not resident
+     */
+    void shiftUp(int position, int end, Set<Integer> incomplete) {
+        int firstPage = pageNumber(position);
+        int lastPage = pageNumber(end);
+        // The item which moves in to the first slot of the page, from the previous page
+        T carry = null;
+        boolean known = true;
+        for (int pageNumber = firstPage; pageNumber <= lastPage; pageNumber++) {
+            Page<T> page = pages.get(pageNumber);
+            if (page == null) {
+                known = false;
+                continue;
+            }
+            if (!known) {
+                incomplete.add(pageNumber);
+            }
+            int from = (pageNumber == firstPage) ? position % pageSize : 0;
+            if (pageNumber < lastPage) {
+                carry = page.insert(from, carry);
+            } else {
+                page.shiftUp(from, end % pageSize);
+                page.set(from, carry);
+            }
+            known = true;
+        }
+    }
+
+    /**
+     * A page of items, stored in a ring buffer. Removing the first item or inserting an item at
+     * the start only moves the start of the ring, so shifting items across a page when an item is
+     * inserted or removed before it takes constant time. Otherwise the shorter side of the page is
+     * shifted.
+     */
+    private static class Page<T> {
+        private final T[] items;
+
+        /** Index in {@link #items} of the first item of the page. */
+        private int head;
+
+        Page(T[] items) {
+            this.items = items;
+        }
+
+        private int index(int offset) {
+            int index = head + offset;
+            return (index < items.length) ? index : index - items.length;
+        }
+
+        T get(int offset) {
+            return items[index(offset)];
+        }
+
+        void set(int offset, T item) {
+            items[index(offset)] = item;
+        }
+
+        /**
+         * Remove the item at the supplied offset, shift the items after it one position down, and
+         * set the last item of the page.
+         */
+        void remove(int offset, T last) {
+            if (offset < items.length / 2) {
+                for (int i = offset; i > 0; i--) {
+                    set(i, get(i - 1));
+                }
+                head = index(1);
+            } else {
+                shiftDown(offset, items.length - 1);
+            }
+            set(items.length - 1, last);
+        }
+
+        /**
+         * Insert an item at the supplied offset, and shift the items after it one position up.
+         *
+         * @return The last item of the page, which is shifted out of the page
+         */
+        T insert(int offset, T item) {
+            T last = get(items.length - 1);
+            if (offset < items.length / 2) {
+                head = index(items.length - 1);
+                for (int i = 0; i < offset; i++) {
+                    set(i, get(i + 1));
+                }
+            } else {
+                shiftUp(offset, items.length - 1);
+            }
+            set(offset, item);
+            return last;
+        }
+
+        /** Shift the items after from, up to and including to, one position down. */
+        void shiftDown(int from, int to) {
+            for (int i = from; i < to; i++) {
+                set(i, get(i + 1));
+            }
+        }
+
+        /** Shift the items from from, up to but not including to, one position up. */
+        void shiftUp(int from, int to) {
+            for (int i = to; i > from; i--) {
+                set(i, get(i - 1));
+            }
+        }
+    }
+}
@@ -220,8 +220,10 @@ public class AlarmsActivity extends BaseListActivity<AlarmView, Alarm> implement
     @MainThread
     @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
     public void onEventMainThread(PlayerStateChanged event) {
-        mActivePlayer = event.player;
-        bindPreferences();
+        if (event.hasChanged(PlayerStateChanged.PREFS)) {
+            mActivePlayer = event.player;
+            bindPreferences();
+        }
     }
 
     @Override
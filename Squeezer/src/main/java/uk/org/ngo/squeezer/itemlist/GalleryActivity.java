@@ -46,6 +46,7 @@ import uk.org.ngo.squeezer.model.Image;
 import uk.org.ngo.squeezer.model.JiveItem;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
 import uk.org.ngo.squeezer.util.ImageFetcher;
+import uk.org.ngo.squeezer.widget.ArtworkPrefetcher;
 import uk.org.ngo.squeezer.widget.GridAutofitLayoutManager;
 
 public class GalleryActivity extends BaseActivity implements IServiceItemListCallback<JiveItem> {
@@ -66,6 +67,7 @@ public class GalleryActivity extends BaseActivity implements IServiceItemListCal
         RecyclerView listView = findViewById(R.id.item_list);
         listView.setAdapter(imageAdapter);
         listView.setLayoutManager(new GridAutofitLayoutManager(this, R.dimen.grid_column_width));
+        listView.addOnScrollListener(new ArtworkPrefetcher(ImageFetcher.getInstance(this), imageAdapter::getArtwork));
 
     }
 
@@ -83,6 +85,11 @@ public class GalleryActivity extends BaseActivity implements IServiceItemListCal
             return images.length;
         }
 
+        private Object getArtwork(int position) {
+            Image[] images = this.images;
+            return (position < images.length) ? images[position].artworkId : null;
+        }
+
         @NonNull
         @Override
         public ImageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -78,7 +78,9 @@ import uk.org.ngo.squeezer.model.Window;
 import uk.org.ngo.squeezer.service.ISqueezeService;
 import uk.org.ngo.squeezer.service.event.ActivePlayerChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
+import uk.org.ngo.squeezer.util.ImageFetcher;
 import uk.org.ngo.squeezer.util.ThemeManager;
+import uk.org.ngo.squeezer.widget.ArtworkPrefetcher;
 import uk.org.ngo.squeezer.widget.GridAutofitLayoutManager;
 
 /*
@@ -111,6 +113,7 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
 
     protected ViewParamItemView<JiveItem> parentViewHolder;
     private RecyclerViewFastScroller fastScroller;
+    private ArtworkPrefetcher artworkPrefetcher;
 
     @Override
     protected ItemAdapter<ItemViewHolder<JiveItem>, JiveItem> createItemListAdapter() {
@@ -214,9 +217,26 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
         super.setContentView(layoutResID);
         fastScroller = findViewById(R.id.fastscroller);
 
+        artworkPrefetcher = new ArtworkPrefetcher(ImageFetcher.getInstance(this), this::getArtwork);
+        getListView().addOnScrollListener(artworkPrefetcher);
+
         setupListView(getListView(), getListLayout());
     }
 
+    /** @return The artwork of the item at the supplied position, if it's loaded and shows artwork */
+    private Object getArtwork(int position) {
+        JiveItem item = getItemAdapter().peekItem(position);
+        return (item != null && item.useIcon()) ? item.getIcon() : null;
+    }
+
+    @Override
+    protected void clearItemAdapter() {
+        if (artworkPrefetcher != null) {
+            artworkPrefetcher.cancel();
+        }
+        super.clearItemAdapter();
+    }
+
     public void setupListView(RecyclerView list, ArtworkListLayout listLayout) {
         RecyclerView.LayoutManager layoutManager = list.getLayoutManager();
         if (listLayout == ArtworkListLayout.grid && !(layoutManager instanceof GridLayoutManager)) {
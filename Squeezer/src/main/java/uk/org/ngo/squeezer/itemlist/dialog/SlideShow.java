@@ -40,6 +40,7 @@ import uk.org.ngo.squeezer.model.Image;
 import uk.org.ngo.squeezer.model.JiveItem;
 import uk.org.ngo.squeezer.service.ISqueezeService;
 import uk.org.ngo.squeezer.util.ImageFetcher;
+import uk.org.ngo.squeezer.util.ImageWorker;
 import uk.org.ngo.squeezer.widget.OnSwipeListener;
 
 public class SlideShow extends DialogFragment implements IServiceItemListCallback<JiveItem> {
@@ -48,6 +49,7 @@ public class SlideShow extends DialogFragment implements IServiceItemListCallbac
     private ImageView artwork;
     private Image[] images;
     private int currentImage;
+    private ImageWorker.Prefetch nextImage;
 
     private final Handler handler = new Handler();
     private final Runnable nextSlideTask = new Runnable() {
@@ -68,12 +70,26 @@ public class SlideShow extends DialogFragment implements IServiceItemListCallbac
 
     private void nextSlide() {
         currentImage = ++currentImage % images.length;
-        ImageFetcher.getInstance(getContext()).loadImage(images[currentImage].artworkId, artwork);
+        ImageFetcher.getInstance(getContext()).loadImage(images[currentImage].artworkId, artwork, this::prefetchNextSlide);
     }
 
     private void prevSlide() {
         currentImage = currentImage > 0 ? --currentImage : images.length - 1;
-        ImageFetcher.getInstance(getContext()).loadImage(images[currentImage].artworkId, artwork);
+        ImageFetcher.getInstance(getContext()).loadImage(images[currentImage].artworkId, artwork, this::prefetchNextSlide);
+    }
+
+    /** Have the next image ready when it's due. Called when the current image is shown. */
+    private void prefetchNextSlide() {
+        cancelPrefetch();
+        Object artworkId = images[(currentImage + 1) % images.length].artworkId;
+        nextImage = ImageFetcher.getInstance(getContext()).prefetch(artworkId, artwork.getWidth(), artwork.getHeight());
+    }
+
+    private void cancelPrefetch() {
+        if (nextImage != null) {
+            nextImage.cancel();
+            nextImage = null;
+        }
     }
 
     private void resetTimeout() {
@@ -156,6 +172,7 @@ public class SlideShow extends DialogFragment implements IServiceItemListCallbac
     public void onDismiss(@NonNull DialogInterface dialog) {
         super.onDismiss(dialog);
         handler.removeCallbacks(nextSlideTask);
+        cancelPrefetch();
     }
 
     @Override
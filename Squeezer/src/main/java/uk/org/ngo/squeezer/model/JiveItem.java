@@ -113,7 +113,14 @@ public class JiveItem extends Item {
     }
 
 
-    private String record;
+    /**
+     * The record this item was created from, and the base record of the response it was part of.
+     * These are references to the decoded response, the JSON is only generated when it's needed.
+     * After a parcel round trip, we only have the JSON in {@link #recordJson}.
+     */
+    private Map<String, Object> record;
+    private Map<String, Object> baseRecord;
+    private String recordJson;
     @NonNull private String name = "";
     public String text2;
     @NonNull public String textkey = "";
@@ -231,21 +238,53 @@ public class JiveItem extends Item {
         return (playAction != null || addAction != null || insertAction != null || moreAction != null || checkbox != null || radio != null);
     }
 
+    /**
+     * @return A copy of the record this item was created from, which can be used to create a new
+     * item, or be persisted.
+     */
     public Map<String, Object> getRecord() {
-        JSON json = new JSON();
-        return (Map) json.fromJSON(this.record);
+        if (record == null) {
+            return (recordJson != null) ? (Map) new JSON().fromJSON(recordJson) : null;
+        }
+        Map<String, Object> copy = copyOf(record);
+        if (baseRecord != null) {
+            copy.put("base", copyOf(baseRecord));
+        }
+        return copy;
     }
 
     public void appendWeight(int weight) {
-        JSON json = new JSON();
-        Map<String, Object> map = (Map) json.fromJSON(this.record);
+        Map<String, Object> map = getRecord();
         map.put("weight", weight);
-        this.record = json.toJSON(map);
+        record = map;
+        baseRecord = null;
+        recordJson = null;
+    }
+
+    private static Map<String, Object> copyOf(Map<String, Object> map) {
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            copy.put(entry.getKey(), copyOfValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static Object copyOfValue(Object value) {
+        if (value instanceof Map) {
+            return copyOf((Map<String, Object>) value);
+        }
+        if (value instanceof Object[]) {
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = copyOfValue(copy[i]);
+            }
+            return copy;
+        }
+        return value;
     }
 
     public JiveItem(Map<String, Object> record) {
-        JSON json = new JSON();
-        this.record = json.toJSON(record);
+        this.record = record;
         setId(getString(record, record.containsKey("cmd") ? "cmd" : "id"));
         splitItemText(getStringOrEmpty(record, record.containsKey("name") ? "name" : "text"));
         textkey = getStringOrEmpty(record, "textkey");
@@ -256,6 +295,8 @@ public class JiveItem extends Item {
         weight = getInt(record, "weight");
         type = getString(record, "type");
         Map<String, Object> baseRecord = getRecord(record, "base");
+        // The "base" entry is removed from the record after the item is created, so keep it separately
+        this.baseRecord = baseRecord;
         Map<String, Object> baseActions = (baseRecord != null ? getRecord(baseRecord, "actions") : null);
         Map<String, Object> baseWindow = (baseRecord != null ? getRecord(baseRecord, "window") : null);
         Map<String, Object> actionsRecord = getRecord(record, "actions");
@@ -347,6 +388,7 @@ public class JiveItem extends Item {
         slider = source.readParcelable(getClass().getClassLoader());
         downloadCommand = source.readParcelable(getClass().getClassLoader());
         webLink = Uri.parse(source.readString());
+        recordJson = source.readString();
 //      TODO
 //        randomPlayFolderCommand = source.readParcelable(getClass().getClassLoader());
     }
@@ -385,6 +427,23 @@ public class JiveItem extends Item {
         dest.writeParcelable(slider, flags);
         dest.writeParcelable(downloadCommand, flags);
         dest.writeString(webLink.toString());
+        dest.writeString(recordJson());
+    }
+
+    /**
+     * @return The JSON of the record, with the base record. The JSON encoder doesn't modify the
+     * maps, so unlike {@link #getRecord()} this doesn't need a copy.
+     */
+    private String recordJson() {
+        if (record == null) {
+            return recordJson;
+        }
+        Map<String, Object> map = record;
+        if (baseRecord != null) {
+            map = new HashMap<>(record);
+            map.put("base", baseRecord);
+        }
+        return new JSON().toJSON(map);
     }
 
     public void setWeight(int weight) {
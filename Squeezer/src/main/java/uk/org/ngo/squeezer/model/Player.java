@@ -21,7 +21,9 @@ import android.os.SystemClock;
 import androidx.annotation.NonNull;
 
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import uk.org.ngo.squeezer.Util;
 import uk.org.ngo.squeezer.service.event.SongTimeChanged;
@@ -31,11 +33,11 @@ public class Player extends Item implements Comparable<Player> {
 
     private String mName;
 
-    private final String mIp;
+    private String mIp;
 
-    private final String mModel;
+    private String mModel;
 
-    private final boolean mCanPowerOff;
+    private boolean mCanPowerOff;
 
     private final PlayerState mPlayerState = new PlayerState();
 
@@ -86,6 +88,58 @@ public class Player extends Item implements Comparable<Player> {
         }
     }
 
+    /**
+     * Update this player with the values from a server status players_loop record.
+     * <p>
+     * Only the fields which differ from the record are assigned, so a player can be updated on
+     * every server status message without allocating new objects.
+     *
+     * @return true if any field or player preference was changed
+     */
+    public boolean update(Map<String, Object> record) {
+        boolean changed = false;
+
+        String name = getString(record, "name");
+        if (!Objects.equals(mName, name)) {
+            mName = name;
+            changed = true;
+        }
+        String ip = getString(record, "ip");
+        if (!Objects.equals(mIp, ip)) {
+            mIp = ip;
+            changed = true;
+        }
+        String model = getString(record, "model");
+        if (!Objects.equals(mModel, model)) {
+            mModel = model;
+            changed = true;
+        }
+        boolean canPowerOff = getInt(record, "canpoweroff") == 1;
+        if (mCanPowerOff != canPowerOff) {
+            mCanPowerOff = canPowerOff;
+            changed = true;
+        }
+        boolean connected = getInt(record, "connected") == 1;
+        if (mConnected != connected) {
+            mConnected = connected;
+            changed = true;
+        }
+
+        // The prefs are read on the UI thread, so replace the map instead of modifying it
+        Map<Pref, String> prefs = new HashMap<>();
+        for (Player.Pref pref : Player.Pref.values()) {
+            if (record.containsKey(pref.prefName)) {
+                prefs.put(pref, Util.getString(record, pref.prefName));
+            }
+        }
+        if (!prefs.equals(mPlayerState.prefs)) {
+            mPlayerState.prefs = prefs;
+            changed = true;
+        }
+
+        return changed;
+    }
+
     private Player(Parcel source) {
         setId(source.readString());
         mIp = source.readString();
@@ -28,10 +28,12 @@ import androidx.annotation.StringDef;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.Util;
@@ -114,6 +116,9 @@ public class PlayerState implements Parcelable {
 
     private CurrentPlaylistItem currentSong;
 
+    /** The song after the current song, if any. Not parcelled, it's only used to prefetch artwork. */
+    private CurrentPlaylistItem nextSong;
+
     /** The name of the current playlist if any. */
     private String currentPlaylist;
 
@@ -151,13 +156,20 @@ public class PlayerState implements Parcelable {
     /** The players synced to this player. */
     private List<String> mSyncSlaves = Collections.emptyList();
 
+    /** The sync slaves as a comma separated string, as last received from the server. */
+    private String mSyncSlavesString;
+
     /** How the server is subscribed to the player's status changes. */
     @NonNull
     private PlayerSubscriptionType mPlayerSubscriptionType = PlayerSubscriptionType.NOTIFY_NONE;
 
-    /** Map of current values of our the playerprefs we track. See the specific SlimClient */
+    /**
+     * Map of current values of our the playerprefs we track. See the specific SlimClient
+     * <p>
+     * The map is replaced when the prefs change, and must not be modified.
+     */
     @NonNull
-    public Map<Player.Pref, String> prefs = new HashMap<>();
+    public volatile Map<Player.Pref, String> prefs = new HashMap<>();
 
     public boolean isPlaying() {
         return PLAY_STATE_PLAY.equals(playStatus);
@@ -240,6 +252,16 @@ public class PlayerState implements Parcelable {
         return true;
     }
 
+    /** @return The song after the current song in the playlist, if known. */
+    @Nullable
+    public CurrentPlaylistItem getNextSong() {
+        return nextSong;
+    }
+
+    public void setNextSong(@Nullable CurrentPlaylistItem song) {
+        nextSong = song;
+    }
+
     /** @return the name of the current playlist, if any. */
     public String getCurrentPlaylist() {
         return currentPlaylist;
@@ -402,6 +424,18 @@ public class PlayerState implements Parcelable {
         return true;
     }
 
+    /**
+     * Set the sync slaves from a comma separated string of player ids. The string is only split
+     * if it differs from the last one.
+     */
+    public boolean setSyncSlaves(@NonNull String syncSlaves) {
+        if (syncSlaves.equals(mSyncSlavesString))
+            return false;
+
+        mSyncSlavesString = syncSlaves;
+        return setSyncSlaves(Arrays.stream(syncSlaves.split(",")).filter(it -> !it.isEmpty()).collect(Collectors.toList()));
+    }
+
     public List<String> getSyncSlaves() {
         return mSyncSlaves;
     }
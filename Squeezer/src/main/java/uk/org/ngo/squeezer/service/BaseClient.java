@@ -19,16 +19,18 @@ package uk.org.ngo.squeezer.service;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 
 import org.greenrobot.eventbus.EventBus;
 import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.Squeezer;
-import uk.org.ngo.squeezer.Util;
 import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
 import uk.org.ngo.squeezer.model.CurrentPlaylistItem;
 import uk.org.ngo.squeezer.model.Player;
@@ -57,6 +59,18 @@ abstract class BaseClient implements SlimClient {
     /** The prefix for URLs for downloads and cover art. */
     String mUrlPrefix;
 
+    /** Recent responses to browse requests, so navigating back and forth doesn't ask the server again. */
+    final ResponseCache mResponseCache = new ResponseCache();
+
+    /** Changes of a player status which are announced with {@link PlayerStateChanged} */
+    private static final int PLAYER_STATE_CHANGES = PlayerStateChanged.POWER
+            | PlayerStateChanged.SLEEP | PlayerStateChanged.SLEEP_DURATION | PlayerStateChanged.VOLUME
+            | PlayerStateChanged.SONG | PlayerStateChanged.SONG_DURATION | PlayerStateChanged.SONG_TIME
+            | PlayerStateChanged.SYNC_MASTER | PlayerStateChanged.SYNC_SLAVES;
+
+    /** Snapshot of the latest player status message, guarded by this */
+    private final PlayerStatus mPlayerStatus = new PlayerStatus();
+
     BaseClient(@NonNull EventBus eventBus) {
         mEventBus = eventBus;
         mConnectionState = new ConnectionState(eventBus);
@@ -90,79 +104,82 @@ abstract class BaseClient implements SlimClient {
         return mUrlPrefix;
     }
 
-    void parseStatus(final Player player, CurrentPlaylistItem currentSong, Map<String, Object> tokenMap) {
+    /**
+     * Apply a player status message to the player state, and post events for the changes.
+     * <p>
+     * Status messages arrive many times a second with several subscribed players, so the message
+     * is read into a reused {@link PlayerStatus} snapshot.
+     */
+    void parseStatus(final Player player, CurrentPlaylistItem currentSong, @Nullable CurrentPlaylistItem nextSong, Map<String, Object> tokenMap) {
         PlayerState playerState = player.getPlayerState();
-        playerState.statusSeen = SystemClock.elapsedRealtime() / 1000.0;
-
-        boolean changedPower = playerState.setPoweredOn(Util.getInt(tokenMap, "power") == 1);
-        boolean changedShuffleStatus = playerState.setShuffleStatus(Util.getString(tokenMap, "playlist shuffle"));
-        boolean changedRepeatStatus = playerState.setRepeatStatus(Util.getString(tokenMap, "playlist repeat"));
-        boolean changedPlaylist = playerState.setCurrentPlaylistTimestamp(Util.getLong(tokenMap, "playlist_timestamp"));
-        playerState.setCurrentPlaylistTracksNum(Util.getInt(tokenMap, "playlist_tracks"));
-        playerState.setCurrentPlaylistIndex(Util.getInt(tokenMap, "playlist_cur_index"));
-        playerState.setCurrentPlaylist(Util.getString(tokenMap, "playlist_name"));
-        boolean changedSleep = playerState.setSleep(Util.getInt(tokenMap, "will_sleep_in"));
-        boolean changedSleepDuration = playerState.setSleepDuration(Util.getInt(tokenMap, "sleep"));
         if (currentSong == null) currentSong = new CurrentPlaylistItem(tokenMap);
-        boolean changedSong = playerState.setCurrentSong(currentSong);
-        playerState.setRemote(Util.getInt(tokenMap, "remote") == 1);
-        playerState.waitingToPlay = Util.getInt(tokenMap, "waitingToPlay") == 1;
-        playerState.rate = Util.getDouble(tokenMap, "rate");
-        boolean changedSongDuration = playerState.setCurrentSongDuration(Util.getInt(tokenMap, "duration"));
-        boolean changedSongTime = playerState.setCurrentTimeSecond(Util.getDouble(tokenMap, "time"));
-        boolean changedVolume = playerState.setCurrentVolume(Util.getInt(tokenMap, "mixer volume"));
-        boolean changedSyncMaster = playerState.setSyncMaster(Util.getString(tokenMap, "sync_master"));
-        boolean changedSyncSlaves = playerState.setSyncSlaves(Arrays.stream(Util.getStringOrEmpty(tokenMap, "sync_slaves").split(",")).filter(it -> !it.isEmpty()).collect(Collectors.toList()));
-        boolean changedPlayStatus = updatePlayStatus(playerState, Util.getStringOrEmpty(tokenMap, "mode"));
+
+        // The snapshot is shared, so apply one message at a time, but post the events after
+        // releasing the lock, so subscribers don't run while holding it.
+        int changes;
+        synchronized (mPlayerStatus) {
+            playerState.statusSeen = SystemClock.elapsedRealtime() / 1000.0;
+            playerState.setNextSong(nextSong);
+
+            mPlayerStatus.read(tokenMap);
+            changes = mPlayerStatus.applyTo(playerState, currentSong);
+        }
+        if (changes != 0) {
+            postStatusChanges(player, changes);
+        }
+    }
+
+    private void postStatusChanges(Player player, int changes) {
+        PlayerState playerState = player.getPlayerState();
 
         // Playing status
-        if (changedPlayStatus) {
+        if ((changes & PlayerStateChanged.PLAY_STATUS) != 0) {
             mEventBus.post(new PlayStatusChanged(playerState.getPlayStatus(), player));
         }
 
-        // Current playlist
-        if (changedPlaylist) {
+        // Current playlist. Cached responses are invalidated before the event is posted, so
+        // subscribers which order the playlist get the new one.
+        if ((changes & PlayerStateChanged.PLAYLIST) != 0) {
+            mResponseCache.invalidate("status", player);
             mEventBus.postSticky(new PlaylistChanged(player));
         }
 
-        if (changedPower || changedSleep || changedSleepDuration || changedVolume
-                || changedSong || changedSongDuration || changedSongTime
-                || changedSyncMaster || changedSyncSlaves) {
-            postPlayerStateChanged(player);
+        if ((changes & PLAYER_STATE_CHANGES) != 0) {
+            postPlayerStateChanged(player, changes);
         }
 
         // Volume
-        if (changedVolume) {
+        if ((changes & PlayerStateChanged.VOLUME) != 0) {
             mEventBus.post(new PlayerVolume(player));
         }
 
         // Power status
-        if (changedPower) {
+        if ((changes & PlayerStateChanged.POWER) != 0) {
             mEventBus.post(new PowerStatusChanged(player));
         }
 
         // Current song
-        if (changedSong) {
+        if ((changes & PlayerStateChanged.SONG) != 0) {
             handleChangedSong(player);
         }
 
         // Shuffle status.
-        if (changedShuffleStatus) {
+        if ((changes & PlayerStateChanged.SHUFFLE_STATUS) != 0) {
             mEventBus.post(new ShuffleStatusChanged(player, playerState.getShuffleStatus()));
         }
 
         // Repeat status.
-        if (changedRepeatStatus) {
+        if ((changes & PlayerStateChanged.REPEAT_STATUS) != 0) {
             mEventBus.post(new RepeatStatusChanged(player, playerState.getRepeatStatus()));
         }
 
         // Position in song
-        if (changedSongDuration || changedSongTime || changedPlayStatus) {
+        if ((changes & (PlayerStateChanged.SONG_DURATION | PlayerStateChanged.SONG_TIME | PlayerStateChanged.PLAY_STATUS)) != 0) {
             postSongTimeChanged(player);
         }
 
         // Sleep times
-        if (changedSleep || changedSleepDuration) {
+        if ((changes & (PlayerStateChanged.SLEEP | PlayerStateChanged.SLEEP_DURATION)) != 0) {
             postSleepTimeChanged(player);
         }
     }
@@ -178,18 +195,11 @@ abstract class BaseClient implements SlimClient {
     }
 
     protected void postPlayerStateChanged(Player player) {
-        mEventBus.post(new PlayerStateChanged(player));
+        postPlayerStateChanged(player, PlayerStateChanged.ALL);
     }
 
-    private boolean updatePlayStatus(PlayerState playerState, String playStatus) {
-        // Handle unknown states.
-        if (!playStatus.equals(PlayerState.PLAY_STATE_PLAY) &&
-                !playStatus.equals(PlayerState.PLAY_STATE_PAUSE) &&
-                !playStatus.equals(PlayerState.PLAY_STATE_STOP)) {
-            return false;
-        }
-
-        return playerState.setPlayStatus(playStatus);
+    protected void postPlayerStateChanged(Player player, int changes) {
+        mEventBus.post(new PlayerStateChanged(player, changes));
     }
 
     protected static class BrowseRequest<T> extends SlimCommand {
@@ -199,6 +209,12 @@ abstract class BaseClient implements SlimClient {
         private int itemsPerResponse;
         private final IServiceItemListCallback<T> callback;
 
+        /** For full lists, the state shared by all pages of the list. */
+        private final FullList<T> list;
+
+        /** Generation of the response cache when the request was sent, see {@link ResponseCache#generation()} */
+        int cacheGeneration;
+
         BrowseRequest(Player player, String[] cmd, Map<String, Object> params, int start, int itemsPerResponse, IServiceItemListCallback<T> callback) {
             this.player = player;
             this.cmd(cmd);
@@ -206,15 +222,40 @@ abstract class BaseClient implements SlimClient {
             this.start = start;
             this.itemsPerResponse = itemsPerResponse;
             this.callback = callback;
+            this.list = fullList ? new FullList<>(itemsPerResponse) : null;
             if (params != null) this.params(params);
         }
 
+        private BrowseRequest(BrowseRequest<T> browseRequest, int start, int itemsPerResponse) {
+            this.player = browseRequest.player;
+            this.cmd(browseRequest.cmd);
+            this.params(browseRequest.params);
+            this.fullList = browseRequest.fullList;
+            this.start = start;
+            this.itemsPerResponse = itemsPerResponse;
+            this.callback = browseRequest.callback;
+            this.list = browseRequest.list;
+        }
+
         public BrowseRequest update(int start, int itemsPerResponse) {
             this.start = start;
             this.itemsPerResponse = itemsPerResponse;
             return this;
         }
 
+        /**
+         * @return A new request for a page of the same list, so several pages can be requested
+         * concurrently
+         */
+        BrowseRequest<T> page(int start, int itemsPerResponse) {
+            return new BrowseRequest<>(this, start, itemsPerResponse);
+        }
+
+        /** @return The start of the next page of a full list, which is not yet ordered */
+        int nextPage(int pageSize) {
+            return list.nextPage.getAndAdd(pageSize);
+        }
+
         public Player getPlayer() {
             return player;
         }
@@ -235,8 +276,75 @@ abstract class BaseClient implements SlimClient {
             return itemsPerResponse;
         }
 
+        /**
+         * @return Key of the response to this request in the response caches. The parameters are
+         *     sorted, so the key doesn't depend on the order they were added.
+         */
+        String cacheKey() {
+            return (player != null ? player.getId() : null) + " " + cmd + " " + new TreeMap<>(params)
+                    + " " + getStart() + " " + itemsPerResponse;
+        }
+
+        /**
+         * Pass the items of a response to the callback. Responses are decoded concurrently, so
+         * the calls to a callback are serialized here, and callbacks don't have to be thread safe.
+         * <p>
+         * Pages of a full list may arrive out of order. They are held back until the preceding
+         * pages are passed, so the callback gets the items of the list in order, and the list is
+         * complete when <code>start + items.size() >= count</code>.
+         */
+        void deliver(int count, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+            synchronized (callback) {
+                if (!fullList) {
+                    callback.onItemsReceived(count, getStart(), parameters, items, dataType);
+                    return;
+                }
+
+                list.pending.put(getStart(), new Page<>(count, parameters, items));
+                Page<T> page;
+                while ((page = list.pending.remove(list.delivered)) != null) {
+                    callback.onItemsReceived(page.count, list.delivered, page.parameters, page.items, dataType);
+                    if (page.items.isEmpty()) {
+                        // The list is shorter than we were told, there's nothing after this
+                        list.pending.clear();
+                        break;
+                    }
+                    list.delivered += page.items.size();
+                }
+            }
+        }
+
         public IServiceItemListCallback<T> getCallback() {
             return callback;
         }
+
+        /** State shared by all pages of a full list. */
+        private static class FullList<T> {
+            /** The start of the next page to order. */
+            final AtomicInteger nextPage;
+
+            /** The start of the next page to pass to the callback, guarded by the callback. */
+            int delivered;
+
+            /** Pages which arrived before a preceding page, by their start, guarded by the callback. */
+            final Map<Integer, Page<T>> pending = new HashMap<>();
+
+            FullList(int firstPageSize) {
+                nextPage = new AtomicInteger(firstPageSize);
+            }
+        }
+
+        /** A received page of a full list. */
+        private static class Page<T> {
+            final int count;
+            final Map<String, Object> parameters;
+            final List<T> items;
+
+            Page(int count, Map<String, Object> parameters, List<T> items) {
+                this.count = count;
+                this.parameters = parameters;
+                this.items = items;
+            }
+        }
     }
 }
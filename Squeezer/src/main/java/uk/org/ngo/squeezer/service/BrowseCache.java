@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.BuildConfig;
+import uk.org.ngo.squeezer.Util;
+import uk.org.ngo.squeezer.util.DiskLruCache;
+import uk.org.ngo.squeezer.util.ImageCache;
+
+/**
+ * Disk cache of the responses to library browse requests, so lists of albums, artists etc. can
+ * be shown without waiting for the server.
+ * <p>
+ * Responses are stored per server, command, parameters and page, with the last scan time of the
+ * library when the response was received. Entries from a different scan of the library are
+ * discarded. Entries are shown while the request is sent to the server to revalidate them.
+ * <p>
+ * The responses are stored in the compact binary format of {@link ResponseFormat}.
+ * <p>
+ * Methods of this class do disk I/O, so they must not be called on the main thread.
+ */
+class BrowseCache {
+    private static final String TAG = "BrowseCache";
+
+    /** Version of the format of the entries. Increment when the format changes. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long MAX_SIZE = 10 * 1024 * 1024;
+
+    private final Context context;
+
+    /** Opened on first use, null if it can't be opened. */
+    private DiskLruCache diskLruCache;
+    private boolean opened;
+
+    private volatile String server;
+    private volatile long lastScan;
+
+    BrowseCache(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /** Set the server we connect to, and the last scan time of its library as we know it. */
+    void setServer(@NonNull String server, long lastScan) {
+        this.server = server;
+        this.lastScan = lastScan;
+    }
+
+    /** Set the last scan time of the library as received from the server. */
+    void setLastScan(long lastScan) {
+        this.lastScan = lastScan;
+    }
+
+    /** @return true if responses to the supplied request are stored in this cache. */
+    boolean isCacheable(BaseClient.BrowseRequest<?> browseRequest) {
+        List<String> cmd = browseRequest.cmd;
+        return server != null && lastScan > 0 && !browseRequest.isCurrent() && !browseRequest.isFullList()
+                && cmd.size() >= 2 && "browselibrary".equals(cmd.get(0)) && "items".equals(cmd.get(1));
+    }
+
+    /**
+     * @return The cached response to the supplied request, or null if there is none, or it's from
+     *     a different scan of the library.
+     */
+    @Nullable
+    Map<String, Object> get(BaseClient.BrowseRequest<?> browseRequest) {
+        DiskLruCache diskLruCache = getDiskCache();
+        if (diskLruCache == null) {
+            return null;
+        }
+
+        String key = key(browseRequest);
+        try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
+            if (snapshot == null) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(snapshot.getInputStream(0)));
+            long entryLastScan = in.readLong();
+            long age = System.currentTimeMillis() - in.readLong();
+            if (entryLastScan != lastScan) {
+                diskLruCache.remove(key);
+                return null;
+            }
+
+            long startTime = SystemClock.uptimeMillis();
+            Map<String, Object> data = ResponseFormat.decode(Util.toByteArray(in));
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "hit " + browseRequest + " age: " + age + "ms, read in " + (SystemClock.uptimeMillis() - startTime) + "ms");
+            }
+            return data;
+        } catch (IOException | IllegalStateException e) {
+            Log.w(TAG, "get " + browseRequest + ": " + e);
+            return null;
+        }
+    }
+
+    /** Store the response to the supplied request, encoded with {@link ResponseFormat}. */
+    void put(BaseClient.BrowseRequest<?> browseRequest, byte[] response) {
+        DiskLruCache diskLruCache = getDiskCache();
+        if (diskLruCache == null) {
+            return;
+        }
+
+        try {
+            DiskLruCache.Editor editor = diskLruCache.edit(key(browseRequest));
+            if (editor == null) {
+                return;
+            }
+            try (OutputStream os = editor.newOutputStream(0)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+                out.writeLong(lastScan);
+                out.writeLong(System.currentTimeMillis());
+                out.write(response);
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                editor.abort();
+                throw e;
+            }
+            editor.commit();
+        } catch (IOException | IllegalStateException e) {
+            Log.w(TAG, "put " + browseRequest + ": " + e);
+        }
+    }
+
+    private synchronized DiskLruCache getDiskCache() {
+        if (!opened) {
+            opened = true;
+            try {
+                diskLruCache = DiskLruCache.open(new File(context.getCacheDir(), "browse"), FORMAT_VERSION, 1, MAX_SIZE);
+            } catch (IOException e) {
+                Log.e(TAG, "open: " + e);
+            }
+        }
+        return diskLruCache;
+    }
+
+    private String key(BaseClient.BrowseRequest<?> browseRequest) {
+        return ImageCache.hashKeyForDisk(server + " " + browseRequest.cacheKey());
+    }
+}
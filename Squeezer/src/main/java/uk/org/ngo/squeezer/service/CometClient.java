@@ -34,6 +34,7 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.util.B64Code;
 
+import java.io.IOException;
 import java.net.Authenticator;
 import java.net.PasswordAuthentication;
 import java.net.URI;
@@ -42,17 +43,30 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
+import uk.org.ngo.squeezer.BuildConfig;
 import uk.org.ngo.squeezer.Preferences;
+import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.Squeezer;
 import uk.org.ngo.squeezer.Util;
 import uk.org.ngo.squeezer.model.AlertWindow;
@@ -109,6 +123,24 @@ class CometClient extends BaseClient {
     /** The format string for the channel to listen to for menu status events. */
     private static final String CHANNEL_MENU_STATUS_FORMAT = "/%s/slim/menustatus/%s";
 
+    /**
+     * Commands which must reach the server strictly in order, i.e. not while any other command
+     * is in flight. The playlist commands address tracks by index, so they must not be reordered
+     * relative to each other.
+     */
+    private static final List<String> SERIALIZED_COMMANDS = Arrays.asList(
+            "playlist move",
+            "playlist delete",
+            "playlist clear",
+            "playlist index"
+    );
+
+    /** Time in milliseconds to collect publish messages into a single bayeux batch. */
+    private static final long BATCH_WINDOW = 10;
+
+    /** Maximum number of publish messages in a single bayeux batch. */
+    private static final int MAX_BATCH_SIZE = 8;
+
     // Maximum time to wait for replies for server capabilities
     private static final long HANDSHAKE_TIMEOUT = 4_000;
 
@@ -117,13 +149,35 @@ class CometClient extends BaseClient {
     public static final long SERVER_STATUS_TIMEOUT = SERVER_STATUS_INTERVAL * 1_000 + 10_000;
 
 
+    /** Maximum number of pages of a full list request, which are ordered concurrently. */
+    private static final int MAX_PAGES_IN_FLIGHT = 3;
+
+    /** Number of threads to decode item list responses. */
+    private static final int DECODE_THREADS = 2;
+
     /** Handler for off-main-thread work. */
     @NonNull
     private final Handler mBackgroundHandler;
 
+    /** Idle decode threads are stopped after this many seconds, so they don't linger while disconnected. */
+    private static final long DECODE_KEEP_ALIVE = 30;
+
+    /**
+     * Item list responses are decoded on this pool, so the thread delivering responses can
+     * continue reading from the server, and responses can be decoded in parallel.
+     */
+    private final ThreadPoolExecutor mDecodeExecutor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS,
+            DECODE_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+    /** Responses to library browse requests, so they can be shown before the server responds. */
+    private final BrowseCache mBrowseCache = new BrowseCache(Squeezer.getInstance());
+
     /** Map from an item request command ("players") to the listener class for responses. */
     private final Map<Class<?>, ItemListener<?>> mItemRequestMap;
 
+    /** Cache of the listener for a callback class, so we only resolve the item type once per class. */
+    private final Map<Class<?>, ItemListener<?>> mCallbackListenerCache = new ConcurrentHashMap<>();
+
     /** Map from a request to the listener class for responses. */
     private  final Map<String, ResponseHandler> mRequestMap;
 
@@ -137,17 +191,36 @@ class CometClient extends BaseClient {
     private final Map<String, BrowseRequest<?>> mPendingBrowseRequests = new ConcurrentHashMap<>();
 
     private final Queue<PublishMessage> mCommandQueue = new LinkedList<>();
-    private boolean mCurrentCommand;
+
+    /**
+     * Maximum number of publish messages awaiting a response. Configured by
+     * R.integer.MaxCommandsInFlight, a value of 1 means stop-and-wait.
+     */
+    private final int mMaxCommandsInFlight = Squeezer.getInstance().getResources().getInteger(R.integer.MaxCommandsInFlight);
+
+    /** Number of publish messages awaiting a response. Only accessed from the handler thread. */
+    private int mCommandsInFlight;
+
+    /** True while a serialized command is awaiting its response. Only accessed from the handler thread. */
+    private boolean mSerializedCommandInFlight;
+
+    /** Number of messages in the current batch. Only accessed from the handler thread. */
+    private int mBatchSize;
+
+    /** Statistics for sent batches, so we can see the effect of batching. */
+    private final BatchCounter mBatchCounter = new BatchCounter();
 
     private final PublishListener mPublishListener = new PublishListener();
 
     // All requests are tagged with a correlation id, which can be used when
     // asynchronous responses are received.
-    private volatile int mCorrelationId = 0;
+    private final AtomicInteger mCorrelationId = new AtomicInteger();
 
     CometClient(@NonNull EventBus eventBus) {
         super(eventBus);
 
+        mDecodeExecutor.allowCoreThreadTimeOut(true);
+
         HandlerThread handlerThread = new HandlerThread(SqueezeService.class.getSimpleName());
         handlerThread.start();
         mBackgroundHandler = new CliHandler(handlerThread.getLooper());
@@ -266,12 +339,22 @@ class CometClient extends BaseClient {
                 }
             });
 
+            final String authorization = (!isSqueezeNetwork && username != null && password != null)
+                    ? "Basic " + B64Code.encode(username + ":" + password)
+                    : null;
+
+            // Download artwork from the server over the persistent connections of our client
+            ImageFetcher imageFetcher = ImageFetcher.getInstance(Squeezer.getInstance());
+            imageFetcher.setHttpClient(httpClient, mUrlPrefix, authorization);
+            imageFetcher.setLastScan(serverAddress.lastScan);
+            mBrowseCache.setServer(serverAddress.address(), serverAddress.lastScan);
+            mResponseCache.clear();
+
             ClientTransport clientTransport = new HttpStreamingTransport(url, null, httpClient) {
                 @Override
                 protected void customize(org.eclipse.jetty.client.api.Request request) {
-                    if (!isSqueezeNetwork && username != null && password != null) {
-                        String authorization = B64Code.encode(username + ":" + password);
-                        request.header(HttpHeader.AUTHORIZATION, "Basic " + authorization);
+                    if (authorization != null) {
+                        request.header(HttpHeader.AUTHORIZATION, authorization);
                     }
                 }
             };
@@ -309,7 +392,9 @@ class CometClient extends BaseClient {
         mPendingRequests.clear();
         mPendingBrowseRequests.clear();
         mCommandQueue.clear();
-        mCurrentCommand = false;
+        mCommandsInFlight = 0;
+        mSerializedCommandInFlight = false;
+        mBatchSize = 0;
         if (mBayeuxClient != null) {
             for (String channelId: List.of(Channel.META_HANDSHAKE, Channel.META_CONNECT)) {
                 ClientSessionChannel channel = mBayeuxClient.getChannel(channelId);
@@ -386,38 +471,60 @@ class CometClient extends BaseClient {
         final Preferences preferences = Squeezer.getPreferences();
         final Preferences.ServerAddress serverAddress = preferences.getServerAddress();
         long lastScan = Util.getLong(data, "lastscan");
+        if (lastScan > 0) {
+            // Cached browse responses from a different scan of the library are discarded
+            mBrowseCache.setLastScan(lastScan);
+        }
         if (lastScan > 0 && lastScan != serverAddress.lastScan) {
             preferences.saveLastScan(serverAddress, lastScan);
-            ImageFetcher.getInstance(Squeezer.getInstance()).clearCache();
+            // Cached artwork which may have changed is revalidated
+            ImageFetcher.getInstance(Squeezer.getInstance()).setLastScan(lastScan);
+            mResponseCache.invalidate("browselibrary");
         }
 
         getConnectionState().setMediaDirs(Util.getStringArray(data, ConnectionState.MEDIA_DIRS));
         getConnectionState().setServerVersion((String) data.get("version"));
         Object[] item_data = (Object[]) data.get("players_loop");
-        final HashMap<String, Player> players = new HashMap<>();
-        if (item_data != null) {
-            for (Object item_d : item_data) {
-                Map<String, Object> record = (Map<String, Object>) item_d;
-                if (!record.containsKey(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName()) &&
-                        data.containsKey(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName())) {
-                    record.put(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName(), data.get(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName()));
+        if (item_data == null) {
+            item_data = new Object[0];
+        }
+
+        // Apply the records to the players we already know. The list of players has only changed
+        // if a player is added, removed or renamed.
+        Map<String, Player> currentPlayers = mConnectionState.getPlayers();
+        boolean playersChanged = firstTimePlayersReceived || item_data.length != currentPlayers.size();
+        for (Object item_d : item_data) {
+            Map<String, Object> record = (Map<String, Object>) item_d;
+            if (!record.containsKey(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName()) &&
+                    data.containsKey(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName())) {
+                record.put(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName(), data.get(Player.Pref.DEFEAT_DESTRUCTIVE_TTP.prefName()));
+            }
+            Player player = currentPlayers.get(Util.getString(record, "playerid"));
+            if (player == null) {
+                playersChanged = true;
+            } else {
+                String name = player.getName();
+                if (player.update(record)) {
+                    if (Objects.equals(name, player.getName())) {
+                        postPlayerStateChanged(player);
+                    } else {
+                        playersChanged = true;
+                    }
                 }
-                Player player = new Player(record);
-                players.put(player.getId(), player);
             }
         }
 
-        Map<String, Player> currentPlayers = mConnectionState.getPlayers();
-        if (firstTimePlayersReceived || !players.equals(currentPlayers)) {
-            mConnectionState.setPlayers(players);
-        } else {
-            for (Player player : players.values()) {
-                PlayerState currentPlayerState = currentPlayers.get(player.getId()).getPlayerState();
-                if (!player.getPlayerState().prefs.equals(currentPlayerState.prefs)) {
-                    currentPlayerState.prefs = player.getPlayerState().prefs;
-                    postPlayerStateChanged(player);
+        if (playersChanged) {
+            final HashMap<String, Player> players = new HashMap<>();
+            for (Object item_d : item_data) {
+                Map<String, Object> record = (Map<String, Object>) item_d;
+                Player player = currentPlayers.get(Util.getString(record, "playerid"));
+                if (player == null) {
+                    player = new Player(record);
                 }
+                players.put(player.getId(), player);
             }
+            mConnectionState.setPlayers(players);
         }
 
         // Set a timeout for the next server status message
@@ -437,16 +544,23 @@ class CometClient extends BaseClient {
 
         Map<String, Object> messageData = message.getDataAsMap();
         CurrentPlaylistItem currentSong = null;
+        CurrentPlaylistItem nextSong = null;
         Object[] item_data = (Object[]) messageData.get("item_loop");
         if (item_data != null && item_data.length > 0) {
-            Map<String, Object> record = (Map<String, Object>) item_data[0];
-
-            patchUrlPrefix(record);
-            record.put("base", messageData.get("base"));
-            currentSong = new CurrentPlaylistItem(record);
-            record.remove("base");
+            currentSong = playlistItem((Map<String, Object>) item_data[0], messageData);
+            if (item_data.length > 1) {
+                nextSong = playlistItem((Map<String, Object>) item_data[1], messageData);
+            }
         }
-        parseStatus(player, currentSong, messageData);
+        parseStatus(player, currentSong, nextSong, messageData);
+    }
+
+    private CurrentPlaylistItem playlistItem(Map<String, Object> record, Map<String, Object> messageData) {
+        patchUrlPrefix(record);
+        record.put("base", messageData.get("base"));
+        CurrentPlaylistItem item = new CurrentPlaylistItem(record);
+        record.remove("base");
+        return item;
     }
 
     @Override
@@ -570,20 +684,60 @@ class CometClient extends BaseClient {
             }
 
             mPendingBrowseRequests.remove(message.getChannel());
-            clear();
-            Map<String, Object> data = message.getDataAsMap();
+            decode(() -> {
+                try {
+                    Map<String, Object> data = message.getDataAsMap();
+                    // Store the response before parseItems patches it
+                    cacheResponse(browseRequest, data);
+                    parseItems(browseRequest, countName, itemLoopName, data, true);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Error parsing response for " + browseRequest, e);
+                }
+            });
+        }
+
+        private void cacheResponse(BrowseRequest<T> browseRequest, Map<String, Object> data) {
+            boolean memory = mResponseCache.isCacheable(browseRequest);
+            boolean disk = mBrowseCache.isCacheable(browseRequest);
+            if (!memory && !disk) {
+                return;
+            }
+            // Errors, and responses which send the user elsewhere, must not be shown again
+            if (data.containsKey("networkerror") || data.containsKey("goNow")) {
+                return;
+            }
+
+            byte[] response;
+            try {
+                response = ResponseFormat.encode(data);
+            } catch (IOException e) {
+                Log.w(TAG, "Can't cache response for " + browseRequest + ": " + e);
+                return;
+            }
+            if (memory) mResponseCache.put(browseRequest, response);
+            if (disk) mBrowseCache.put(browseRequest, response);
+        }
+
+        /**
+         * Items are accumulated per response, so this may be called concurrently for different responses
+         *
+         * @param orderMore Order the rest of the page or list, if any. False for cached responses
+         *     which are revalidated, the response from the server orders the rest.
+         */
+        private void parseItems(BrowseRequest<T> browseRequest, String countName, String itemLoopName, Map<String, Object> data, boolean orderMore) {
             int count = Util.getInt(data.get(countName));
             Map<String, Object> baseRecord = (Map<String, Object>) data.get("base");
             if (baseRecord != null) {
                 patchUrlPrefix(baseRecord);
             }
             Object[] item_data = (Object[]) data.get(itemLoopName);
+            List<T> items = new ArrayList<>(item_data != null ? item_data.length : 0);
             if (item_data != null) {
                 for (Object item_d : item_data) {
                     Map<String, Object> record = (Map<String, Object>) item_d;
                     patchUrlPrefix(record);
                     if (baseRecord != null) record.put("base", baseRecord);
-                    add(record);
+                    items.add(createItem(record));
                     record.remove("base");
                 }
             }
@@ -591,22 +745,53 @@ class CometClient extends BaseClient {
             // Process the lists for all the registered handlers
             final boolean fullList = browseRequest.isFullList();
             final int start = browseRequest.getStart();
-            final int end = start + getItems().size();
+            final int end = start + items.size();
             int max = 0;
             patchUrlPrefix(data);
-            browseRequest.getCallback().onItemsReceived(count, start, data, getItems(), getDataType());
+            browseRequest.deliver(count, data, items, getDataType());
             if (count > max) {
                 max = count;
             }
 
             // Check if we need to order more items
-            if ((fullList || end % mPageSize != 0) && end < max && !browseRequest.isCurrent()) {
-                int itemsPerResponse = (end + mPageSize > max ? max - end : fullList ? mPageSize : mPageSize - browseRequest.getItemsPerResponse());
+            if (!orderMore) {
+                return;
+            }
+            if (fullList) {
+                orderFullListPages(browseRequest, end, max);
+            } else if (end % mPageSize != 0 && end < max && !browseRequest.isCurrent()) {
+                int itemsPerResponse = (end + mPageSize > max ? max - end : mPageSize - browseRequest.getItemsPerResponse());
                 //XXX support prefix
                 internalRequestItems(browseRequest.update(end, itemsPerResponse));
             }
         }
 
+        /**
+         * Order the remaining pages of a full list.
+         * <p>
+         * When the first page arrives we know the number of items, so we order up to
+         * {@link #MAX_PAGES_IN_FLIGHT} pages concurrently. Each of the following pages orders the
+         * next page which is not ordered yet, so there are at most {@link #MAX_PAGES_IN_FLIGHT}
+         * pages in flight for a list. Pages may arrive out of order, but they are passed to the
+         * callback in order, see {@link BrowseRequest#deliver(int, Map, List, Class)}.
+         */
+        private void orderFullListPages(BrowseRequest<T> browseRequest, int end, int count) {
+            // The server returned less than we asked for, so order the rest of the page
+            int pageEnd = Math.min(browseRequest.getStart() + browseRequest.getItemsPerResponse(), count);
+            if (end > browseRequest.getStart() && end < pageEnd) {
+                internalRequestItems(browseRequest.page(end, pageEnd - end));
+            }
+
+            int pages = (browseRequest.getStart() == 0) ? MAX_PAGES_IN_FLIGHT : 1;
+            for (int i = 0; i < pages; i++) {
+                int start = browseRequest.nextPage(mPageSize);
+                if (start >= count) {
+                    break;
+                }
+                internalRequestItems(browseRequest.page(start, Math.min(mPageSize, count - start)));
+            }
+        }
+
         void parseMessage(String itemLoopName, Message message) {
             parseMessage("count", itemLoopName, message);
         }
@@ -656,6 +841,20 @@ class CometClient extends BaseClient {
         public void onResponse(Player player, Request request, Message message) {
             parseMessage("item_loop", message);
         }
+
+        /**
+         * Parse a cached response
+         *
+         * @param fresh False if the request is sent to the server to revalidate the response
+         */
+        @SuppressWarnings("unchecked")
+        void parseCachedItems(BrowseRequest<?> browseRequest, Map<String, Object> data, boolean fresh) {
+            try {
+                parseItems((BrowseRequest<JiveItem>) browseRequest, "count", "item_loop", data, fresh);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Error parsing cached response for " + browseRequest, e);
+            }
+        }
     }
 
     @Subscribe
@@ -669,6 +868,21 @@ class CometClient extends BaseClient {
         mConnectionState.setConnectionState(fromUser ? ConnectionState.State.MANUAL_DISCONNECT : ConnectionState.State.DISCONNECTED);
     }
 
+    @Override
+    public void destroy() {
+        mDecodeExecutor.shutdownNow();
+        mBackgroundHandler.getLooper().quitSafely();
+    }
+
+    /** Run the supplied task on the decode pool, unless this client is destroyed. */
+    private void decode(Runnable task) {
+        try {
+            mDecodeExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Response after destroy: " + e);
+        }
+    }
+
     private void disconnect(ConnectionError connectionError) {
         if (mBayeuxClient != null) mBackgroundHandler.sendEmptyMessage(MSG_DISCONNECT);
         mConnectionState.setConnectionError(connectionError);
@@ -676,10 +890,43 @@ class CometClient extends BaseClient {
 
     @Override
     public void cancelClientRequests(Object client) {
+        cancelBrowseRequests(browseRequest -> browseRequest.getCallback().getClient() == client);
+    }
+
+    @Override
+    public void cancelClientRequests(Object client, int start, int end) {
+        cancelBrowseRequests(browseRequest -> browseRequest.getCallback().getClient() == client
+                && !browseRequest.isFullList() && !browseRequest.isCurrent()
+                && (browseRequest.getStart() < start || browseRequest.getStart() >= end));
+    }
+
+    /**
+     * Cancel the browse requests which match the filter. Responses to requests already sent are
+     * ignored, and requests still in the command queue are dropped, so they don't take a slot.
+     */
+    private void cancelBrowseRequests(Predicate<BrowseRequest<?>> filter) {
+        Set<String> responseChannels = new HashSet<>();
         for (Map.Entry<String, BrowseRequest<?>> entry : mPendingBrowseRequests.entrySet()) {
-            if (entry.getValue().getCallback().getClient() == client) {
-                Log.d(TAG, "Cancel: " + entry.getValue().cmd);
+            if (filter.test(entry.getValue())) {
+                Log.d(TAG, "Cancel: " + entry.getValue().cmd + " " + entry.getValue().getStart());
                 mPendingBrowseRequests.remove(entry.getKey());
+                responseChannels.add(entry.getKey());
+            }
+        }
+        // The publish of a request is posted to the handler before it can be cancelled, so it is
+        // in the command queue or sent when this is handled
+        if (!responseChannels.isEmpty()) {
+            mBackgroundHandler.obtainMessage(MSG_CANCEL, responseChannels).sendToTarget();
+        }
+    }
+
+    /** Drop the queued messages to the supplied response channels. This may only be called from the handler thread */
+    private void dropQueuedMessages(Set<String> responseChannels) {
+        for (Iterator<PublishMessage> it = mCommandQueue.iterator(); it.hasNext(); ) {
+            PublishMessage publishMessage = it.next();
+            if (responseChannels.contains(publishMessage.responseChannel)) {
+                it.remove();
+                mPendingRequests.remove(publishMessage.responseChannel);
             }
         }
     }
@@ -688,20 +935,26 @@ class CometClient extends BaseClient {
         exec(request(callback, cmd));
     }
 
-    private String exec(Request request) {
-        String responseChannel = String.format(CHANNEL_SLIM_REQUEST_RESPONSE_FORMAT, mBayeuxClient.getId(), mCorrelationId++);
+    private void exec(Request request) {
+        exec(request, null);
+    }
+
+    /** Register the request (and browse request if any), and send it to the server */
+    private void exec(Request request, BrowseRequest<?> browseRequest) {
+        String responseChannel = String.format(CHANNEL_SLIM_REQUEST_RESPONSE_FORMAT, mBayeuxClient.getId(), mCorrelationId.getAndIncrement());
+        if (browseRequest != null) mPendingBrowseRequests.put(responseChannel, browseRequest);
         if (request.callback != null) mPendingRequests.put(responseChannel, request);
         publishMessage(request, CHANNEL_SLIM_REQUEST, responseChannel, null);
-        return responseChannel;
     }
 
     /** If request is null, this is an unsubscribe to the suplied response channel */
     private void publishMessage(final Request request, final String channel, final String responseChannel, final PublishListener publishListener) {
+        PublishMessage publishMessage = new PublishMessage(request, channel, responseChannel, publishListener);
+
         // Make sure all requests are done in the handler thread
         if (mBackgroundHandler.getLooper() == Looper.myLooper()) {
-            _publishMessage(request, channel, responseChannel, publishListener);
+            _publishMessage(publishMessage);
         } else {
-            PublishMessage publishMessage = new PublishMessage(request, channel, responseChannel, publishListener);
             android.os.Message message = mBackgroundHandler.obtainMessage(MSG_PUBLISH, publishMessage);
             mBackgroundHandler.sendMessage(message);
         }
@@ -709,38 +962,155 @@ class CometClient extends BaseClient {
     }
 
     /** This may only be called from the handler thread */
-    private void _publishMessage(Request request, String channel, String responseChannel, PublishListener publishListener) {
-        if (!mCurrentCommand) {
-            mCurrentCommand = true;
-            Map<String, Object> data = new HashMap<>();
-            if (request != null) {
-                data.put("request", request.slimRequest());
-                data.put("response", responseChannel);
-            } else {
-                data.put("unsubscribe", responseChannel);
-            }
-            mBayeuxClient.getChannel(channel).publish(data, publishListener != null ? publishListener : this.mPublishListener);
-        } else
-            mCommandQueue.add(new PublishMessage(request, channel, responseChannel, publishListener));
+    private void _publishMessage(PublishMessage publishMessage) {
+        // Queued messages go first, to preserve the order of the commands
+        if (mCommandQueue.isEmpty() && canPublish(publishMessage)) {
+            publish(publishMessage);
+        } else {
+            mCommandQueue.add(publishMessage);
+            // The queue is not drained before we get responses, so don't hold back the batch
+            flushBatch();
+        }
+    }
+
+    /**
+     * Messages are pipelined, i.e. we don't wait for the response of a message before we send the
+     * next, as long as there are less than {@link #mMaxCommandsInFlight} messages in flight.
+     * <p>
+     * Serialized messages, see {@link PublishMessage#isSerialized()}, waits until all other messages
+     * has been answered, and no messages are sent until the response for a serialized message is
+     * received.
+     * <p>
+     * This may only be called from the handler thread
+     */
+    private boolean canPublish(PublishMessage publishMessage) {
+        if (mSerializedCommandInFlight) {
+            return false;
+        }
+        return publishMessage.isSerialized() ? mCommandsInFlight == 0 : mCommandsInFlight < mMaxCommandsInFlight;
+    }
+
+    /**
+     * Publish the message as part of the current batch, starting a new batch if needed.
+     * <p>
+     * Messages published within {@link #BATCH_WINDOW} milliseconds are sent to the server in a
+     * single HTTP request, up to {@link #MAX_BATCH_SIZE} messages.
+     * <p>
+     * This may only be called from the handler thread
+     */
+    private void publish(PublishMessage publishMessage) {
+        if (mBatchSize == 0) {
+            mBayeuxClient.startBatch();
+            mBackgroundHandler.sendEmptyMessageDelayed(MSG_FLUSH_BATCH, BATCH_WINDOW);
+        }
+        mCommandsInFlight++;
+        mSerializedCommandInFlight = publishMessage.isSerialized();
+        Map<String, Object> data = new HashMap<>();
+        if (publishMessage.request != null) {
+            data.put("request", publishMessage.request.slimRequest());
+            data.put("response", publishMessage.responseChannel);
+        } else {
+            data.put("unsubscribe", publishMessage.responseChannel);
+        }
+        PublishListener publishListener = publishMessage.publishListener;
+        mBayeuxClient.getChannel(publishMessage.channel).publish(data, publishListener != null ? publishListener : this.mPublishListener);
+
+        // A serialized message blocks all other messages until it is answered, so send it now
+        if (++mBatchSize >= MAX_BATCH_SIZE || publishMessage.isSerialized()) {
+            flushBatch();
+        }
+    }
+
+    /** Send the messages of the current batch (if any). This may only be called from the handler thread */
+    private void flushBatch() {
+        mBackgroundHandler.removeMessages(MSG_FLUSH_BATCH);
+        if (mBatchSize > 0) {
+            mBatchCounter.add(mBatchSize);
+            mBatchSize = 0;
+            mBayeuxClient.endBatch();
+        }
+    }
+
+    /** This may only be called from the handler thread */
+    private void publishQueuedMessages() {
+        PublishMessage publishMessage;
+        while ((publishMessage = mCommandQueue.peek()) != null && canPublish(publishMessage)) {
+            publish(mCommandQueue.remove());
+        }
     }
 
     @Override
     protected  <T> void internalRequestItems(final BrowseRequest<T> browseRequest) {
-        Class<?> callbackClass = Reflection.getGenericClass(browseRequest.getCallback().getClass(), IServiceItemListCallback.class, 0);
-        ItemListener listener = mItemRequestMap.get(callbackClass);
-        if (listener == null) {
-            throw new RuntimeException("No handler defined for '" + browseRequest.getCallback().getClass() + "'");
-        }
+        ItemListener<?> listener = getItemListener(browseRequest.getCallback().getClass());
 
         Request request = request(browseRequest.getPlayer(), listener, browseRequest.cmd())
                 .page(browseRequest.isCurrent() ? "-" : String.valueOf(browseRequest.getStart()), browseRequest.getItemsPerResponse())
                 .params(browseRequest.params);
-        mPendingBrowseRequests.put(exec(request), browseRequest);
+
+        browseRequest.cacheGeneration = mResponseCache.generation();
+
+        if (listener instanceof JiveItemListener) {
+            JiveItemListener jiveItemListener = (JiveItemListener) listener;
+
+            // Responses in memory are used without asking the server. The lookup is cheap, so
+            // misses are sent at once, the response is decoded in the background.
+            if (mResponseCache.isCacheable(browseRequest) && mResponseCache.contains(browseRequest)) {
+                decode(() -> {
+                    Map<String, Object> data = mResponseCache.get(browseRequest);
+                    if (data != null) {
+                        jiveItemListener.parseCachedItems(browseRequest, data, true);
+                    } else {
+                        // Expired or evicted since we looked
+                        mBackgroundHandler.post(() -> execIfConnected(request, browseRequest));
+                    }
+                });
+                return;
+            }
+
+            // Library browse responses on disk are shown while the server revalidates them, so the
+            // request is sent first, and the disk cache is read in parallel.
+            if (mBrowseCache.isCacheable(browseRequest)) {
+                exec(request, browseRequest);
+                decode(() -> {
+                    Map<String, Object> data = mBrowseCache.get(browseRequest);
+                    // Don't show the cached response if the server has already answered
+                    if (data != null && mPendingBrowseRequests.containsValue(browseRequest)) {
+                        jiveItemListener.parseCachedItems(browseRequest, data, false);
+                    }
+                });
+                return;
+            }
+        }
+
+        exec(request, browseRequest);
+    }
+
+    /** Send the request, unless we have disconnected. This may only be called from the handler thread */
+    private void execIfConnected(Request request, BrowseRequest<?> browseRequest) {
+        if (mBayeuxClient != null) {
+            exec(request, browseRequest);
+        }
+    }
+
+    @NonNull
+    private ItemListener<?> getItemListener(Class<?> callbackClass) {
+        ItemListener<?> listener = mCallbackListenerCache.get(callbackClass);
+        if (listener == null) {
+            Class<?> dataType = Reflection.getGenericClass(callbackClass, IServiceItemListCallback.class, 0);
+            listener = mItemRequestMap.get(dataType);
+            if (listener == null) {
+                throw new RuntimeException("No handler defined for '" + callbackClass + "'");
+            }
+            mCallbackListenerCache.put(callbackClass, listener);
+        }
+        return listener;
     }
 
     @Override
     public void command(Player player, String[] cmd, Map<String, Object> params) {
         ResponseHandler callback = mRequestMap.get(cmd[0]);
+        // F.e. "favorites delete" changes the responses to "favorites items"
+        mResponseCache.invalidateChangedBy(cmd[0]);
         exec(request(player, callback, cmd).params(params));
     }
 
@@ -792,6 +1162,11 @@ class CometClient extends BaseClient {
         publishMessage(null, CHANNEL_SLIM_UNSUBSCRIBE, subscribeResponseChannel(player, CHANNEL_MENU_STATUS_FORMAT), null);
     }
 
+    /** @return Statistics of the number of messages per batch sent to the server */
+    BatchCounter getBatchCounter() {
+        return mBatchCounter;
+    }
+
     private String subscribeResponseChannel(Player player, String format) {
         return String.format(format, mBayeuxClient.getId(), player.getId());
     }
@@ -811,6 +1186,8 @@ class CometClient extends BaseClient {
     private static final int MSG_TIME_UPDATE = 6;
     private static final int MSG_SLEEP_UPDATE = 7;
     private static final int MSG_MUSIC_CHANGED = 8;
+    private static final int MSG_FLUSH_BATCH = 9;
+    private static final int MSG_CANCEL = 10;
     private class CliHandler extends Handler {
         CliHandler(Looper looper) {
             super(looper);
@@ -820,8 +1197,7 @@ class CometClient extends BaseClient {
         public void handleMessage(android.os.Message msg) {
             switch (msg.what) {
                 case MSG_PUBLISH: {
-                    PublishMessage message = (PublishMessage) msg.obj;
-                    _publishMessage(message.request, message.channel, message.responseChannel, message.publishListener);
+                    _publishMessage((PublishMessage) msg.obj);
                     break;
                 }
                 case MSG_DISCONNECT:
@@ -836,11 +1212,16 @@ class CometClient extends BaseClient {
                     Log.w(TAG, "Server status timeout: initiate a new handshake");
                     if (mConnectionState.isConnected()) mBayeuxClient.rehandshake();
                     break;
+                case MSG_FLUSH_BATCH:
+                    flushBatch();
+                    break;
+                case MSG_CANCEL:
+                    dropQueuedMessages((Set<String>) msg.obj);
+                    break;
                 case MSG_PUBLISH_RESPONSE_RECIEVED: {
-                    mCurrentCommand = false;
-                    PublishMessage message = mCommandQueue.poll();
-                    if (message != null)
-                        _publishMessage(message.request, message.channel, message.responseChannel, message.publishListener);
+                    if (mCommandsInFlight > 0) mCommandsInFlight--;
+                    if (mCommandsInFlight == 0) mSerializedCommandInFlight = false;
+                    publishQueuedMessages();
                     break;
                 }
                 case MSG_TIME_UPDATE: {
@@ -943,6 +1324,16 @@ class CometClient extends BaseClient {
             return TextUtils.join(" ", cmd);
         }
 
+        private boolean isSerialized() {
+            String request = getRequest();
+            for (String command : SERIALIZED_COMMANDS) {
+                if (request.startsWith(command)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         List<Object> slimRequest() {
             List<Object> slimRequest = new ArrayList<>();
 
@@ -966,7 +1357,8 @@ class CometClient extends BaseClient {
     }
 
     private static class PagingParams {
-        private static final PagingParams status = new PagingParams("-", "1");
+        /** The current song and the next, so the artwork of the next song can be prefetched. */
+        private static final PagingParams status = new PagingParams("-", "2");
         private static final PagingParams _default = new PagingParams("0", "255");
 
         private final String start;
@@ -978,6 +1370,35 @@ class CometClient extends BaseClient {
         }
     }
 
+    /** Counts the number of messages per batch sent to the server. */
+    static class BatchCounter {
+        private long batches;
+        private long messages;
+
+        private synchronized void add(int batchSize) {
+            batches++;
+            messages += batchSize;
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Sending batch of " + batchSize + " messages, " + this);
+            }
+        }
+
+        /** @return Average number of messages per batch */
+        synchronized double getMessagesPerBatch() {
+            return batches > 0 ? (double) messages / batches : 0;
+        }
+
+        @NonNull
+        @Override
+        public synchronized String toString() {
+            return "BatchCounter{" +
+                    "batches=" + batches +
+                    ", messages=" + messages +
+                    ", messagesPerBatch=" + String.format(Locale.ROOT, "%.2f", getMessagesPerBatch()) +
+                    '}';
+        }
+    }
+
     private static class PublishMessage {
         final Request request;
         final String channel;
@@ -990,5 +1411,13 @@ class CometClient extends BaseClient {
             this.responseChannel = responseChannel;
             this.publishListener = publishListener;
         }
+
+        /**
+         * Subscription changes and some commands, see {@link #SERIALIZED_COMMANDS}, must be
+         * processed by the server in the order they are issued.
+         */
+        private boolean isSerialized() {
+            return !CHANNEL_SLIM_REQUEST.equals(channel) || request.isSerialized();
+        }
     }
 }
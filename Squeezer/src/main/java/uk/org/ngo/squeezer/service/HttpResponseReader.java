@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.text.ParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads HTTP responses with JSON content from a byte channel.
+ * <p>
+ * Responses are framed on the raw bytes, using a single direct {@link ByteBuffer} which is reused
+ * for all responses read from the channel. Both <code>Content-Length</code> and chunk sizes are
+ * byte counts, so content with multibyte UTF-8 characters is read correctly.
+ * <p>
+ * The content is passed to a {@link JsonFramer}, which decodes each JSON value once.
+ */
+class HttpResponseReader {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final Pattern httpStatusLinePattern = Pattern.compile("HTTP/1.1 (\\d{3}) \\p{all}+");
+
+    private final ReadableByteChannel channel;
+
+    /** Bytes read from the channel. Between calls, the remaining bytes are not yet consumed. */
+    private final ByteBuffer buffer;
+
+    private final StringBuilder line = new StringBuilder();
+
+    private int status;
+    private boolean chunked;
+    private int contentLength;
+
+    HttpResponseReader(ReadableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    HttpResponseReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.limit(0);
+    }
+
+    /** @return The HTTP status code of the current response, or -1 if it could not be parsed */
+    int getStatus() {
+        return status;
+    }
+
+    boolean isChunked() {
+        return chunked;
+    }
+
+    int getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Read the status line and the headers of the next response.
+     */
+    void readHeaders() throws IOException {
+        status = parseHttpStatus(readLine());
+        chunked = false;
+        contentLength = 0;
+
+        String headerLine;
+        while (!"".equals(headerLine = readLine())) {
+            if ("Transfer-Encoding: chunked".equals(headerLine))
+                chunked = true;
+            int pos = headerLine.indexOf("Content-Length: ");
+            if (pos == 0) {
+                contentLength = Integer.parseInt(headerLine.substring("Content-Length: ".length()));
+            }
+        }
+    }
+
+    /**
+     * Read the content of the current response, and feed it to the supplied JSON framer.
+     * <p>
+     * For chunked responses, complete JSON values are handed to the framer's listener as soon as
+     * they arrive, regardless of how they are split into chunks.
+     */
+    void readContent(JsonFramer jsonFramer) throws IOException, ParseException {
+        jsonFramer.reset();
+        if (chunked) {
+            int chunkSize;
+            while ((chunkSize = parseChunkSize(readLine())) > 0) {
+                readContent(jsonFramer, chunkSize);
+                readLine();// Read CRLF after the chunk data
+            }
+            readLine();//Read final/empty chunk
+        } else {
+            readContent(jsonFramer, contentLength);
+        }
+    }
+
+    /**
+     * Read and discard the content of the current response, f.e. the HTML page of an error
+     * response, so the next response can be read.
+     */
+    void skipContent() throws IOException {
+        if (chunked) {
+            int chunkSize;
+            while ((chunkSize = parseChunkSize(readLine())) > 0) {
+                skip(chunkSize);
+                readLine();// Read CRLF after the chunk data
+            }
+            readLine();//Read final/empty chunk
+        } else {
+            skip(contentLength);
+        }
+    }
+
+    private void skip(int size) throws IOException {
+        int remaining = size;
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                fill();
+            }
+            int bytes = Math.min(remaining, buffer.remaining());
+            buffer.position(buffer.position() + bytes);
+            remaining -= bytes;
+        }
+    }
+
+    private void readContent(JsonFramer jsonFramer, int size) throws IOException, ParseException {
+        int remaining = size;
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                fill();
+            }
+            int bytes = Math.min(remaining, buffer.remaining());
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + bytes);
+            jsonFramer.feed(buffer);
+            buffer.limit(limit);
+            remaining -= bytes;
+        }
+    }
+
+    private int parseHttpStatus(String statusLine) {
+        Matcher m = httpStatusLinePattern.matcher(statusLine);
+        try {
+            if (m.find()) {
+                return Integer.parseInt(m.group(1));
+            }
+        } catch (NumberFormatException e) {
+        }
+        return -1;
+    }
+
+    private int parseChunkSize(String chunkSizeLine) throws IOException {
+        // Ignore chunk extensions
+        int pos = chunkSizeLine.indexOf(';');
+        String chunkSize = (pos >= 0 ? chunkSizeLine.substring(0, pos) : chunkSizeLine).trim();
+        try {
+            return Integer.parseInt(chunkSize, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + chunkSizeLine);
+        }
+    }
+
+    /** Read a line of the HTTP headers (or chunk size), without the line terminator */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                fill();
+            }
+            byte b = buffer.get();
+            if (b == '\n') {
+                return line.toString();
+            }
+            if (b != '\r') {
+                line.append((char) (b & 0xff));
+            }
+        }
+    }
+
+    /** Refill the buffer from the channel. May only be called when all bytes are consumed. */
+    private void fill() throws IOException {
+        buffer.clear();
+        int bytes;
+        do {
+            bytes = channel.read(buffer);
+        } while (bytes == 0);
+        buffer.flip();
+        if (bytes < 0) {
+            throw new EOFException();
+        }
+    }
+}
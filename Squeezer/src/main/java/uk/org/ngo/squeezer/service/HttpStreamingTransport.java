@@ -27,16 +27,8 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.http.HttpStatus;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
-import java.io.BufferedReader;
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
@@ -45,14 +37,18 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -324,6 +320,10 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                         try {
                             List<Message.Mutable> responseMessages = parseMessages(content);
                             //Log.v(TAG, "Received messages " + messages);
+                            Set<String> answeredIds = new HashSet<>();
+                            for (Message.Mutable message : responseMessages) {
+                                if (message.getId() != null) answeredIds.add(message.getId());
+                            }
                             for (Message.Mutable message : responseMessages) {
                                 // LMS echoes the data field in the publish response for messages to the
                                 // slim/unsubscribe channel.
@@ -341,10 +341,14 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                                 } else {
                                     // LMS does not put ID on all replies. In this case we look for a request with the same
                                     // channel as this response, and use the id from that request.
+                                    // Requests may be batched, so we use the first request which
+                                    // is not already answered.
                                     if (message.isPublishReply() && message.getId() == null) {
                                         for (Message.Mutable requestMessage : requestMessages) {
-                                            if (requestMessage.getChannel().equals(message.getChannel())) {
+                                            if (requestMessage.getChannel().equals(message.getChannel()) && !answeredIds.contains(requestMessage.getId())) {
                                                 message.setId(requestMessage.getId());
+                                                answeredIds.add(requestMessage.getId());
+                                                break;
                                             }
                                         }
                                     }
@@ -372,18 +376,21 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
     }
 
     private static void sendText(OutputStream stream, String json, HttpFields customHeaders) throws IOException {
+        // Content-Length is the number of bytes, not characters
+        byte[] content = json.getBytes(StandardCharsets.UTF_8);
         StringBuilder msg = new StringBuilder("POST /cometd HTTP/1.1\r\n" +
                 HttpHeader.CONTENT_TYPE.asString() + ": text/json;charset=UTF-8\r\n" +
-                HttpHeader.CONTENT_LENGTH.asString() + ": " + json.length() + "\r\n");
+                HttpHeader.CONTENT_LENGTH.asString() + ": " + content.length + "\r\n");
 
         for (HttpField httpField : customHeaders) {
             if (httpField.getHeader() != HttpHeader.ACCEPT_ENCODING) {
                 msg.append(httpField.getName()).append(": ").append(httpField.getValue()).append("\r\n");
             }
         }
-        msg.append("\r\n").append(json);
-        //Log.v(TAG,"sendtext: " + msg);
+        msg.append("\r\n");
+        //Log.v(TAG,"sendtext: " + msg + json);
         stream.write(msg.toString().getBytes(StandardCharsets.UTF_8));
+        stream.write(content);
         stream.flush();
     }
 
@@ -419,14 +426,15 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         }
 
         public void connect(String host, int port) throws IOException {
-            Socket session = new Socket();
+            // Use a socket channel, so responses can be read directly into a byte buffer
+            Socket session = SocketChannel.open().socket();
 
             synchronized (this) {
                 socket = session;
             }
 
             session.connect(new InetSocketAddress(host, port), 4000); // TODO use proper timeout
-            new ListeningThread(this, session.getInputStream()).start();
+            new ListeningThread(this, session.getChannel()).start();
         }
 
         private void disconnect(String reason) {
@@ -647,37 +655,35 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
 
     private static class ListeningThread extends Thread {
         private final Delegate delegate;
-        private final BufferedReader reader;
+        private final HttpResponseReader reader;
+        private final JsonFramer jsonFramer;
 
-        public ListeningThread(Delegate delegate, InputStream inputStream) {
+        public ListeningThread(Delegate delegate, ReadableByteChannel channel) {
             this.delegate = delegate;
-            reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            reader = new HttpResponseReader(channel);
+            jsonFramer = new JsonFramer(delegate::onData);
         }
 
         @Override
         public void run() {
             while (delegate.isConnected()) {
                 try {
-                    int status = parseHttpStatus(readLine());
-
-                    boolean chunked = false;
-                    int contentSize = 0;
-                    String headerLine;
-                    while (!"".equals(headerLine = readLine())) {
-                        if ("Transfer-Encoding: chunked".equals(headerLine))
-                            chunked = true;
-                        int pos = headerLine.indexOf("Content-Length: ");
-                        if (pos == 0) {
-                            contentSize = Integer.parseInt(headerLine.substring("Content-Length: ".length()));
-                        }
+                    reader.readHeaders();
+                    int status = reader.getStatus();
+
+                    if (status != HttpStatus.OK_200) {
+                        // The content is not JSON, f.e. the HTML page of a 401 response
+                        reader.skipContent();
+                        Map<String, Object> failure = new HashMap<>(2);
+                        failure.put("httpCode", status);
+                        TransportException x = new TransportException(failure);
+                        delegate.fail(x, "Unexpected HTTP status code");
+                        continue;
                     }
 
-                    if (!chunked) {
-                        String content = read(contentSize);
-                        if (content.length() > 0) {
-                            if (status == HttpStatus.OK_200) {
-                                delegate.onData(content);
-                            }
+                    if (!reader.isChunked()) {
+                        if (reader.getContentLength() > 0) {
+                            reader.readContent(jsonFramer);
                         } else {
                             Map<String, Object> failure = new HashMap<>(2);
                             // Convert the 200 into 204 (no content)
@@ -686,29 +692,14 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                             delegate.fail(x, "No content");
                         }
                     } else {
-                        String unprocessed = "";
-                        while (!"0".equals(readLine())) {
-                            String data = readLine();
-                            unprocessed += data;
-                            if (isValidJson(unprocessed)) {
-                                if (status == HttpStatus.OK_200) {
-                                    delegate.onData(unprocessed);
-                                }
-                                unprocessed = "";
-                            } else {
-                                Log.v(TAG, "JSON is not valid! Appending to next chunk: " + data);
-                            }
+                        reader.readContent(jsonFramer);
+                        if (jsonFramer.hasPartialValue()) {
+                            Log.w(TAG, "Incomplete JSON at end of chunks");
                         }
-                        readLine();//Read final/empty chunk
                         delegate.disconnect("End of chunks");
                     }
-
-                    if (status != HttpStatus.OK_200) {
-                        Map<String, Object> failure = new HashMap<>(2);
-                        failure.put("httpCode", status);
-                        TransportException x = new TransportException(failure);
-                        delegate.fail(x, "Unexpected HTTP status code");
-                    }
+                } catch (ParseException e) {
+                    delegate.fail(e, "ParseException");
                 } catch (IOException e) {
                     if (delegate.isConnected()) {
                         delegate.fail(e, "IOException reading socket");
@@ -716,55 +707,6 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                 }
             }
         }
-
-        private boolean isValidJson(String jsonStr) {
-            try {
-                JSONTokener tokenizer = new JSONTokener(jsonStr);
-                while (tokenizer.more()) {
-                    Object json = tokenizer.nextValue();
-                    if (!(json instanceof JSONObject || json instanceof JSONArray)) {
-                        return false;
-                    }
-                }
-                return true;
-            } catch (JSONException e) {
-                return false;
-            }
-        }
-
-        Pattern httpStatusLinePattern = Pattern.compile("HTTP/1.1 (\\d{3}) \\p{all}+");
-        private int parseHttpStatus(String statusLine) {
-            Matcher m = httpStatusLinePattern.matcher(statusLine);
-            try {
-                if (m.find()) {
-                    return Integer.parseInt(m.group(1));
-                }
-            } catch (NumberFormatException e) {
-            }
-            return -1;
-        }
-
-        private String readLine() throws IOException {
-            String inputLine = reader.readLine();
-            if (inputLine == null) {
-                throw new EOFException();
-            }
-            return inputLine;
-        }
-
-        private String read(int size) throws IOException {
-            char[] buffer = new char[size];
-            int length = 0, bytes;
-            while ((bytes = reader.read(buffer, length, size - length)) > 0) {
-                length += bytes;
-                if (length == size) break;
-                Log.v(TAG, "Partial read " + bytes + ", read so far " + length + ", still needs " + (size - length));
-            }
-            if (length != size) {
-                throw new EOFException("Expected " + size + " characters, but got " + length);
-            }
-            return new String(buffer);
-        }
     }
 
 
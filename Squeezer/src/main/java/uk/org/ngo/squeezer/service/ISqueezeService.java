@@ -143,6 +143,9 @@ public interface ISqueezeService {
     /** Cancel any pending callbacks for client */
     void cancelItemListRequests(Object client);
 
+    /** Cancel pending page requests for client, which start outside positions start (inclusive) to end (exclusive) */
+    void cancelItemListRequests(Object client, int start, int end);
+
     /** Alarm list */
     void alarms(int start, IServiceItemListCallback<Alarm> callback);
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import androidx.fragment.app.Fragment.InstantiationException;
+
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import uk.org.ngo.squeezer.model.Alarm;
+import uk.org.ngo.squeezer.model.AlarmPlaylist;
+import uk.org.ngo.squeezer.model.JiveItem;
+import uk.org.ngo.squeezer.model.MusicFolderItem;
+import uk.org.ngo.squeezer.model.Song;
+
+/**
+ * Registry of factories which create model objects from the item records of CLI results.
+ * <p>
+ * Item types are created with explicit factories, so parsing a response does not use reflection.
+ */
+final class ItemFactories {
+    private static final Map<Class<?>, Function<Map<String, Object>, ?>> factories = new HashMap<>();
+
+    static {
+        register(Alarm.class, Alarm::new);
+        register(AlarmPlaylist.class, AlarmPlaylist::new);
+        register(JiveItem.class, JiveItem::new);
+        register(MusicFolderItem.class, MusicFolderItem::new);
+        register(Song.class, Song::new);
+    }
+
+    private ItemFactories() {
+    }
+
+    private static <T> void register(Class<T> dataType, Function<Map<String, Object>, T> factory) {
+        factories.put(dataType, factory);
+    }
+
+    /**
+     * @return The registered factory for the supplied type, or if none is registered, a factory
+     * which uses the constructor of the type which takes the item record.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Function<Map<String, Object>, T> get(Class<T> dataType) {
+        Function<Map<String, Object>, ?> factory = factories.get(dataType);
+        return (factory != null) ? (Function<Map<String, Object>, T>) factory : reflective(dataType);
+    }
+
+    /**
+     * @return A factory which creates items of the supplied type by calling its constructor which
+     * takes the item record via reflection.
+     */
+    static <T> Function<Map<String, Object>, T> reflective(Class<T> dataType) {
+        final Constructor<T> constructor;
+        try {
+            constructor = dataType.getDeclaredConstructor(Map.class);
+        } catch (Exception e) {
+            throw new InstantiationException(
+                    "Unable to create constructor for " + dataType.getName(), e);
+        }
+        return record -> {
+            try {
+                return constructor.newInstance(record);
+            } catch (Exception e) {
+                throw new InstantiationException("Unable to create new " + dataType.getName(), e);
+            }
+        };
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * Incremental framing of a stream of JSON values.
+ * <p>
+ * Bytes are fed as they arrive from the network, and each complete top level JSON object or
+ * array is handed to the listener as soon as its closing bracket arrives. The state of the scan
+ * is kept between calls, so each byte is only examined once.
+ * <p>
+ * All structural characters of JSON are ASCII, and all bytes of a UTF-8 multibyte sequence are
+ * &gt;= 0x80, so the framing is done on the raw UTF-8 bytes. The bytes of a complete value are
+ * decoded once, when the value is handed to the listener. If a value is contained in a single
+ * call to {@link #feed(ByteBuffer)} it is decoded directly from the supplied buffer, otherwise
+ * the bytes are collected in a reusable buffer until the value is complete.
+ */
+class JsonFramer {
+    private final Listener listener;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /** Bytes of the current value, when it spans more than one call to {@link #feed(ByteBuffer)} */
+    private ByteBuffer pending = ByteBuffer.allocateDirect(8192);
+
+    /** Decoded characters of the latest value */
+    private CharBuffer chars = CharBuffer.allocate(8192);
+
+    /** Nesting depth of objects and arrays. Zero when outside a value. */
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+
+    JsonFramer(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Forget any partial value, f.e. before reading a new response. */
+    void reset() {
+        pending.clear();
+        depth = 0;
+        inString = false;
+        escape = false;
+    }
+
+    /** @return true if a value has been started, but it's not completed yet. */
+    boolean hasPartialValue() {
+        return depth > 0;
+    }
+
+    /**
+     * Scan the remaining bytes of the supplied buffer, and call the listener for each JSON value
+     * completed by these bytes. On return the position of the buffer is at its limit.
+     *
+     * @throws ParseException If a top level value is not an object or an array.
+     */
+    void feed(ByteBuffer bytes) throws ParseException {
+        int offset = bytes.position();
+        int end = bytes.limit();
+        int start = (depth > 0) ? offset : -1;
+        for (int i = offset; i < end; i++) {
+            byte b = bytes.get(i);
+            if (depth == 0) {
+                if (b == '{' || b == '[') {
+                    depth = 1;
+                    start = i;
+                } else if (!isWhitespace(b)) {
+                    bytes.position(end);
+                    throw new ParseException("Unexpected character '" + (char) b + "' outside JSON value", i - offset);
+                }
+            } else if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    if (pending.position() == 0) {
+                        emit(slice(bytes, start, i + 1));
+                    } else {
+                        append(slice(bytes, start, i + 1));
+                        pending.flip();
+                        emit(pending);
+                        pending.clear();
+                    }
+                    start = -1;
+                }
+            }
+        }
+        if (depth > 0) {
+            append(slice(bytes, start, end));
+        }
+        bytes.position(end);
+    }
+
+    private static ByteBuffer slice(ByteBuffer bytes, int from, int to) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(to).position(from);
+        return slice;
+    }
+
+    private void append(ByteBuffer bytes) {
+        if (bytes.remaining() > pending.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(pending.capacity() * 2, pending.position() + bytes.remaining()));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.put(bytes);
+    }
+
+    private void emit(ByteBuffer bytes) {
+        // A UTF-8 byte never decodes to more than one UTF-16 char
+        if (bytes.remaining() > chars.capacity()) {
+            chars = CharBuffer.allocate(Math.max(chars.capacity() * 2, bytes.remaining()));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        listener.onJson(chars.toString());
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    interface Listener {
+        /** Called with the text of each complete top level JSON value. */
+        void onJson(String json);
+    }
+}
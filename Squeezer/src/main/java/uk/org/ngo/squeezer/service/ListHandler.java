@@ -16,7 +16,6 @@
 
 package uk.org.ngo.squeezer.service;
 
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,19 +30,12 @@ interface ListHandler<T> {
     Class<T> getDataType();
 
     /**
-     * @return The list of items received so far
-     */
-    List<T> getItems();
-
-    /**
-     * Prepare for parsing an extended query format response
-     */
-    void clear();
-
-    /**
-     * Called for each item received in the current reply. Just store this internally.
+     * Called for each item received in a reply.
+     * <p>
+     * Handlers hold no state for a reply, so replies may be processed concurrently.
      *
      * @param record Item data from Squeezebox Server
+     * @return The item created from the supplied data
      */
-    void add(Map<String, Object> record);
+    T createItem(Map<String, Object> record);
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import java.util.Map;
+
+import uk.org.ngo.squeezer.Util;
+import uk.org.ngo.squeezer.model.CurrentPlaylistItem;
+import uk.org.ngo.squeezer.model.PlayerState;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
+
+/**
+ * Reusable snapshot of the fields of a player status message.
+ * <p>
+ * The fields are read from the message once into primitive fields, and then compared with the
+ * {@link PlayerState} of the player. The result is a bitmask of the changes, see
+ * {@link PlayerStateChanged}.
+ * <p>
+ * Not thread safe, the caller must make sure one message is read and applied at a time.
+ */
+class PlayerStatus {
+    private boolean power;
+    private int shuffle;
+    private int repeat;
+    private long playlistTimestamp;
+    private int playlistTracks;
+    private int playlistIndex;
+    private String playlistName;
+    private int willSleepIn;
+    private int sleep;
+    private boolean remote;
+    private boolean waitingToPlay;
+    private double rate;
+    private int duration;
+    private double time;
+    private int volume;
+    private String syncMaster;
+    private String syncSlaves;
+    private String mode;
+
+    /** Read the fields of the supplied status message. */
+    void read(Map<String, Object> tokenMap) {
+        power = Util.getInt(tokenMap, "power") == 1;
+        shuffle = Util.getInt(tokenMap, "playlist shuffle", -1);
+        repeat = Util.getInt(tokenMap, "playlist repeat", -1);
+        playlistTimestamp = Util.getLong(tokenMap, "playlist_timestamp");
+        playlistTracks = Util.getInt(tokenMap, "playlist_tracks");
+        playlistIndex = Util.getInt(tokenMap, "playlist_cur_index");
+        playlistName = Util.getString(tokenMap, "playlist_name");
+        willSleepIn = Util.getInt(tokenMap, "will_sleep_in");
+        sleep = Util.getInt(tokenMap, "sleep");
+        remote = Util.getInt(tokenMap, "remote") == 1;
+        waitingToPlay = Util.getInt(tokenMap, "waitingToPlay") == 1;
+        rate = Util.getDouble(tokenMap, "rate");
+        duration = Util.getInt(tokenMap, "duration");
+        time = Util.getDouble(tokenMap, "time");
+        volume = Util.getInt(tokenMap, "mixer volume");
+        syncMaster = Util.getString(tokenMap, "sync_master");
+        syncSlaves = Util.getStringOrEmpty(tokenMap, "sync_slaves");
+        mode = Util.getStringOrEmpty(tokenMap, "mode");
+    }
+
+    /**
+     * Apply the snapshot and the supplied current song to the player state.
+     *
+     * @return Bitmask of the changes, see {@link PlayerStateChanged}
+     */
+    int applyTo(PlayerState playerState, CurrentPlaylistItem currentSong) {
+        int changes = 0;
+
+        if (playerState.setPoweredOn(power)) changes |= PlayerStateChanged.POWER;
+        if (playerState.setShuffleStatus(shuffle < 0 ? null : PlayerState.ShuffleStatus.valueOf(shuffle))) changes |= PlayerStateChanged.SHUFFLE_STATUS;
+        if (playerState.setRepeatStatus(repeat < 0 ? null : PlayerState.RepeatStatus.valueOf(repeat))) changes |= PlayerStateChanged.REPEAT_STATUS;
+        if (playerState.setCurrentPlaylistTimestamp(playlistTimestamp)) changes |= PlayerStateChanged.PLAYLIST;
+        playerState.setCurrentPlaylistTracksNum(playlistTracks);
+        playerState.setCurrentPlaylistIndex(playlistIndex);
+        playerState.setCurrentPlaylist(playlistName);
+        if (playerState.setSleep(willSleepIn)) changes |= PlayerStateChanged.SLEEP;
+        if (playerState.setSleepDuration(sleep)) changes |= PlayerStateChanged.SLEEP_DURATION;
+        if (playerState.setCurrentSong(currentSong)) changes |= PlayerStateChanged.SONG;
+        playerState.setRemote(remote);
+        playerState.waitingToPlay = waitingToPlay;
+        playerState.rate = rate;
+        if (playerState.setCurrentSongDuration(duration)) changes |= PlayerStateChanged.SONG_DURATION;
+        if (playerState.setCurrentTimeSecond(time)) changes |= PlayerStateChanged.SONG_TIME;
+        if (playerState.setCurrentVolume(volume)) changes |= PlayerStateChanged.VOLUME;
+        if (playerState.setSyncMaster(syncMaster)) changes |= PlayerStateChanged.SYNC_MASTER;
+        if (playerState.setSyncSlaves(syncSlaves)) changes |= PlayerStateChanged.SYNC_SLAVES;
+        if (updatePlayStatus(playerState)) changes |= PlayerStateChanged.PLAY_STATUS;
+
+        return changes;
+    }
+
+    private boolean updatePlayStatus(PlayerState playerState) {
+        // Handle unknown states.
+        if (!mode.equals(PlayerState.PLAY_STATE_PLAY) &&
+                !mode.equals(PlayerState.PLAY_STATE_PAUSE) &&
+                !mode.equals(PlayerState.PLAY_STATE_STOP)) {
+            return false;
+        }
+
+        return playerState.setPlayStatus(mode);
+    }
+}
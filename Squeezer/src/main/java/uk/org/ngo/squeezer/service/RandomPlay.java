@@ -2,11 +2,11 @@ package uk.org.ngo.squeezer.service;
 
 import android.util.Log;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -33,7 +33,7 @@ public class RandomPlay {
 
     private Boolean firstFound;
     private String nextTrack;
-    private Map<String, Set<String>> tracks = new HashMap<>();
+    private final Map<String, Set<String>> tracks = new ConcurrentHashMap<>();
     private BiFunction<Set<String>, Set<String>, Set<String>> mergeSets = (set1, set2) -> set1 == null ?
             set1 : Stream.concat(set1.stream(), set2.stream()).collect(Collectors.toSet());
 
@@ -109,7 +109,8 @@ public class RandomPlay {
                 }
             }
 
-            // All items loaded, if no unplayed are found, clear played
+            // All items loaded, if no unplayed are found, clear played. Pages of the list are
+            // passed in order, so this is the last page.
             if (start + items.size() >= count) {
                 if (!RandomPlay.this.firstFound) {
                     this.played.clear();
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import uk.org.ngo.squeezer.BuildConfig;
+import uk.org.ngo.squeezer.model.Player;
+import uk.org.ngo.squeezer.util.FluentHashMap;
+
+/**
+ * Memory cache of recent responses to browse requests, so navigating back and forth between a
+ * few lists doesn't send the same requests to the server again.
+ * <p>
+ * Only responses to the commands in {@link #TTLS} are cached, and only for the time to live of the
+ * command. Responses which may change are invalidated, f.e. the current playlist ("status") of a
+ * player when it changes, and the library ("browselibrary") when it's rescanned.
+ * <p>
+ * Responses are stored in the compact format of {@link ResponseFormat}, and the size of the cache
+ * is bounded by the size of the stored responses.
+ */
+class ResponseCache {
+    private static final String TAG = "ResponseCache";
+
+    /** Maximum size of the stored responses. */
+    private static final int MAX_SIZE = (int) Math.min(4 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 32);
+
+    /** Time to live in milliseconds of responses by command. Responses to other commands are not cached. */
+    private static final Map<String, Long> TTLS = new FluentHashMap<String, Long>()
+            .with("browselibrary", 5 * 60_000L)
+            .with("status", 5 * 60_000L)
+            .with("radios", 5 * 60_000L)
+            .with("apps", 5 * 60_000L)
+            .with("myapps", 5 * 60_000L)
+            .with("favorites", 60_000L);
+
+    /**
+     * Commands which change the responses to another command. Favorites are edited from server
+     * menus with "jivefavorites", f.e. "jivefavorites add" and "jivefavorites delete".
+     */
+    private static final Map<String, String> CHANGES = new FluentHashMap<String, String>()
+            .with("jivefavorites", "favorites");
+
+    private static class Entry {
+        final String command;
+        @Nullable final String playerId;
+        final byte[] response;
+        final long expires;
+
+        Entry(String command, @Nullable String playerId, byte[] response, long expires) {
+            this.command = command;
+            this.playerId = playerId;
+            this.response = response;
+            this.expires = expires;
+        }
+    }
+
+    private final LruCache<String, Entry> cache;
+
+    /** Source of the time in milliseconds, f.e. {@link SystemClock#elapsedRealtime()}. */
+    private final LongSupplier clock;
+
+    private final boolean logStats;
+
+    /** Incremented when responses are invalidated, guarded by this. */
+    private int generation;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    ResponseCache() {
+        this(MAX_SIZE, SystemClock::elapsedRealtime, BuildConfig.DEBUG);
+    }
+
+    /**
+     * @param maxSize Maximum size of the stored responses
+     * @param clock Source of the time in milliseconds
+     * @param logStats Log hits and misses
+     */
+    ResponseCache(int maxSize, LongSupplier clock, boolean logStats) {
+        this.cache = new LruCache<String, Entry>(maxSize) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Entry entry) {
+                return key.length() * 2 + entry.response.length;
+            }
+        };
+        this.clock = clock;
+        this.logStats = logStats;
+    }
+
+    /** @return true if responses to the supplied request are stored in this cache. */
+    boolean isCacheable(BaseClient.BrowseRequest<?> browseRequest) {
+        return !browseRequest.isCurrent() && !browseRequest.isFullList() && !browseRequest.cmd.isEmpty() && TTLS.containsKey(browseRequest.cmd.get(0));
+    }
+
+    /**
+     * @return The current generation of the cache. Pass it to {@link #put(BaseClient.BrowseRequest, byte[])}
+     *     with the response, so responses to requests sent before an invalidation are not stored.
+     */
+    synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     * @return true if a response to the supplied request is stored and not expired. Cheap, the
+     *     response is not decoded.
+     */
+    boolean contains(BaseClient.BrowseRequest<?> browseRequest) {
+        Entry entry = cache.get(browseRequest.cacheKey());
+        return entry != null && entry.expires > clock.getAsLong();
+    }
+
+    /** @return The cached response to the supplied request, or null if there is none, or it has expired. */
+    @Nullable
+    Map<String, Object> get(BaseClient.BrowseRequest<?> browseRequest) {
+        String key = browseRequest.cacheKey();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expires <= clock.getAsLong()) {
+            cache.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            logStats("miss", browseRequest);
+            return null;
+        }
+
+        try {
+            Map<String, Object> data = ResponseFormat.decode(entry.response);
+            hits.incrementAndGet();
+            logStats("hit", browseRequest);
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "get " + browseRequest + ": " + e);
+            cache.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Store the response to the supplied request, unless responses are invalidated since the
+     * request was sent.
+     *
+     * @param response The response encoded with {@link ResponseFormat}
+     */
+    void put(BaseClient.BrowseRequest<?> browseRequest, byte[] response) {
+        String command = browseRequest.cmd.get(0);
+        String playerId = (browseRequest.getPlayer() != null) ? browseRequest.getPlayer().getId() : null;
+        Entry entry = new Entry(command, playerId, response, clock.getAsLong() + TTLS.get(command));
+        synchronized (this) {
+            if (browseRequest.cacheGeneration != generation) {
+                return;
+            }
+            cache.put(browseRequest.cacheKey(), entry);
+        }
+    }
+
+    /** Remove the responses which may be changed by the supplied command. */
+    void invalidateChangedBy(String command) {
+        invalidate(command);
+        String changed = CHANGES.get(command);
+        if (changed != null) {
+            invalidate(changed);
+        }
+    }
+
+    /** Remove the responses to the supplied command. */
+    void invalidate(String command) {
+        invalidate(command, null);
+    }
+
+    /** Remove the responses to the supplied command, for the supplied player, or all players if null. */
+    synchronized void invalidate(String command, @Nullable Player player) {
+        if (!TTLS.containsKey(command)) {
+            return;
+        }
+        generation++;
+        for (Map.Entry<String, Entry> mapEntry : cache.snapshot().entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (entry.command.equals(command) && (player == null || Objects.equals(entry.playerId, player.getId()))) {
+                cache.remove(mapEntry.getKey());
+            }
+        }
+    }
+
+    /** Remove all responses, f.e. when we connect to a server. */
+    synchronized void clear() {
+        generation++;
+        cache.evictAll();
+    }
+
+    private void logStats(String result, BaseClient.BrowseRequest<?> browseRequest) {
+        if (logStats) {
+            Log.d(TAG, String.format("%s %s, h: %d m: %d, size: %d of %d",
+                    result, browseRequest.cmd, hits.get(), misses.get(), cache.size(), cache.maxSize()));
+        }
+    }
+}
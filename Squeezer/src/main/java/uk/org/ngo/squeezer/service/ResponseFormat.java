@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format of decoded JSON responses from the server, for the response caches.
+ * <p>
+ * Each value is written as a type tag followed by the value. Map keys are written once per
+ * response, later occurrences are written as an index in to the keys written so far. Sizes are
+ * mostly small, so they are written in 7-bit groups, with the high bit set if more follows.
+ */
+class ResponseFormat {
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INTEGER = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_BOOLEAN = 5;
+    private static final int TYPE_MAP = 6;
+    private static final int TYPE_ARRAY = 7;
+
+    private ResponseFormat() {
+    }
+
+    /** @return The supplied response in the binary format */
+    static byte[] encode(Map<String, Object> data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        write(out, data, new HashMap<>());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** @return The response in the supplied bytes, as decoded from JSON */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> decode(byte[] bytes) throws IOException {
+        try {
+            return (Map<String, Object>) read(new DataInputStream(new ByteArrayInputStream(bytes)), new ArrayList<>());
+        } catch (ClassCastException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid response: " + e);
+        }
+    }
+
+    private static void write(DataOutputStream out, Object value, Map<String, Integer> keys) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TYPE_MAP);
+            writeSize(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                Integer index = keys.get(key);
+                if (index != null) {
+                    writeSize(out, index + 1);
+                } else {
+                    writeSize(out, 0);
+                    writeString(out, key);
+                    keys.put(key, keys.size());
+                }
+                write(out, entry.getValue(), keys);
+            }
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            out.writeByte(TYPE_ARRAY);
+            writeSize(out, array.length);
+            for (Object element : array) {
+                write(out, element, keys);
+            }
+        } else {
+            throw new IOException("Unsupported type: " + value.getClass());
+        }
+    }
+
+    private static Object read(DataInputStream in, List<String> keys) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_MAP: {
+                int size = readLength(in);
+                Map<String, Object> map = new HashMap<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    int index = readSize(in);
+                    String key;
+                    if (index == 0) {
+                        key = readString(in);
+                        keys.add(key);
+                    } else {
+                        key = keys.get(index - 1);
+                    }
+                    map.put(key, read(in, keys));
+                }
+                return map;
+            }
+            case TYPE_ARRAY: {
+                Object[] array = new Object[readLength(in)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = read(in, keys);
+                }
+                return array;
+            }
+            default:
+                throw new IOException("Unknown type: " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeSize(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeSize(DataOutputStream out, int size) throws IOException {
+        while ((size & ~0x7f) != 0) {
+            out.writeByte((size & 0x7f) | 0x80);
+            size >>>= 7;
+        }
+        out.writeByte(size);
+    }
+
+    /**
+     * Read the length of a string, or the number of elements of a map or an array. Each byte or
+     * element takes at least one byte of input, so the length is checked against the remaining
+     * input before anything is allocated for it.
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = readSize(in);
+        if (length > in.available()) {
+            throw new IOException("Invalid length: " + length + ", " + in.available() + " bytes left");
+        }
+        return length;
+    }
+
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            size |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (size < 0) {
+                    throw new IOException("Invalid size: " + size);
+                }
+                return size;
+            }
+        }
+        throw new IOException("Invalid size");
+    }
+}
@@ -40,6 +40,9 @@ interface SlimClient {
     // XXX: Document
     void disconnect(boolean fromUser);
 
+    /** Release the threads of this client, when the service is destroyed. It can't be used after this. */
+    void destroy();
+
     ConnectionState getConnectionState();
     String getUsername();
     String getPassword();
@@ -66,7 +69,9 @@ interface SlimClient {
      * to the caller when they arrive.
      * <p>
      * If start is < 0, it means the caller wants the entire list. They are ordered in
-     * pages, and transferred to the caller as they arrive.
+     * pages. When the number of items is known, several pages are ordered concurrently.
+     * Pages may arrive out of order, but they are transferred to the caller in order, so the
+     * list is complete when start + number of items reaches the number of items in the list.
      * <p>
      * Otherwise request a page of items starting from start.
      * <p>
@@ -88,6 +93,16 @@ interface SlimClient {
      */
     void cancelClientRequests(Object client);
 
+    /**
+     * Cancel the page requests of the specified client (activity), which start outside the
+     * supplied range of positions.
+     *
+     * @param client messages receiver
+     * @param start First position of the pages to keep
+     * @param end Position after the pages to keep
+     */
+    void cancelClientRequests(Object client, int start, int end);
+
     void requestServerStatus();
 
     void requestPlayerStatus(Player player);
@@ -47,10 +47,18 @@ public class SlimDelegate {
         mClient.disconnect(fromUser);
     }
 
+    void destroy() {
+        mClient.destroy();
+    }
+
     void cancelClientRequests(Object client) {
         mClient.cancelClientRequests(client);
     }
 
+    void cancelClientRequests(Object client, int start, int end) {
+        mClient.cancelClientRequests(client, start, end);
+    }
+
 
     void requestServerStatus() {
         mClient.requestServerStatus();
@@ -287,6 +287,7 @@ public class SqueezeService extends Service {
     public void onDestroy() {
         super.onDestroy();
         disconnect(false);
+        mDelegate.destroy();
         mEventBus.unregister(this);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -452,9 +453,9 @@ public class SqueezeService extends Service {
                 .build();
         mMediaSession.setPlaybackState(playbackState);
 
-        ImageFetcher.getInstance(this).loadImage(song != null ? song.getIcon() : null,
-                getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
-                getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_height),
+        int iconWidth = getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        int iconHeight = getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+        ImageFetcher.getInstance(this).loadImage(song != null ? song.getIcon() : null, iconWidth, iconHeight,
                 (data, bitmap) -> {
                     if (bitmap != null) {
                         metaBuilder.putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, bitmap);
@@ -463,6 +464,12 @@ public class SqueezeService extends Service {
                     }
                     notify(bitmap);
                 });
+
+        // Have the artwork of the next song ready when the song changes
+        CurrentPlaylistItem nextSong = player.getPlayerState().getNextSong();
+        if (nextSong != null && nextSong.useIcon()) {
+            ImageFetcher.getInstance(this).prefetch(nextSong.getIcon(), iconWidth, iconHeight);
+        }
     }
 
     private void notify(Bitmap bitmap) {
@@ -1412,6 +1419,11 @@ public class SqueezeService extends Service {
             mDelegate.cancelClientRequests(client);
         }
 
+        @Override
+        public void cancelItemListRequests(Object client, int start, int end) {
+            mDelegate.cancelClientRequests(client, start, end);
+        }
+
         @Override
         public void alarms(int start, IServiceItemListCallback<Alarm> callback) {
             if (!isConnected()) {
@@ -21,19 +21,55 @@ import androidx.annotation.NonNull;
 
 import uk.org.ngo.squeezer.model.Player;
 
-/** Event sent when a player's state has changed. */
+/**
+ * Event sent when a player's state has changed.
+ * <p>
+ * The event carries the set of changes as a bitmask, so subscribers can skip updates they are
+ * not interested in. Events posted for other reasons than a player status message has
+ * {@link #ALL} set.
+ */
 public class PlayerStateChanged {
+    public static final int POWER = 1;
+    public static final int PLAY_STATUS = 1 << 1;
+    public static final int SHUFFLE_STATUS = 1 << 2;
+    public static final int REPEAT_STATUS = 1 << 3;
+    public static final int PLAYLIST = 1 << 4;
+    public static final int SLEEP = 1 << 5;
+    public static final int SLEEP_DURATION = 1 << 6;
+    public static final int SONG = 1 << 7;
+    public static final int SONG_DURATION = 1 << 8;
+    public static final int SONG_TIME = 1 << 9;
+    public static final int VOLUME = 1 << 10;
+    public static final int SYNC_MASTER = 1 << 11;
+    public static final int SYNC_SLAVES = 1 << 12;
+    public static final int PREFS = 1 << 13;
+    public static final int ALL = -1;
+
     /** The player with changed state. */
     @NonNull public final Player player;
 
+    /** Bitmask of the changes */
+    public final int changes;
+
     public PlayerStateChanged(@NonNull Player player) {
+        this(player, ALL);
+    }
+
+    public PlayerStateChanged(@NonNull Player player, int changes) {
         this.player = player;
+        this.changes = changes;
+    }
+
+    /** @return true if any of the changes in the supplied mask are in this event */
+    public boolean hasChanged(int mask) {
+        return (changes & mask) != 0;
     }
 
     @Override
     public String toString() {
         return "PlayerStateChanged{" +
                 "player=" + player +
+                ", changes=0x" + Integer.toHexString(changes) +
                 '}';
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import uk.org.ngo.squeezer.Util;
+
+/**
+ * Downloads artwork with the Jetty {@link HttpClient} of the server connection.
+ * <p>
+ * The client keeps a pool of persistent connections per destination, so artwork from the server
+ * doesn't pay for a new TCP connection per image. The response body is read in to a buffer sized
+ * from the Content-Length, and requests can be conditional on the validators (ETag and
+ * Last-Modified) of a cached copy of the image.
+ * <p>
+ * The client is not configured for TLS, so only plain http URLs are fetched, see
+ * {@link #canFetch(String)}.
+ */
+class ArtworkHttpClient {
+    private static final String TAG = "ArtworkHttpClient";
+
+    private static final int TIMEOUT_SECONDS = 15;
+
+    /** Don't download larger images, they are decoded in memory. */
+    private static final int MAX_CONTENT_LENGTH = 20 * 1024 * 1024;
+
+    private final HttpClient httpClient;
+    private final String serverHost;
+    private final int serverPort;
+    @Nullable
+    private final String authorization;
+
+    /**
+     * @param httpClient Started client of the server connection
+     * @param serverUrl URL of the server
+     * @param authorization Value of the authorization header for requests to the server, if any
+     */
+    ArtworkHttpClient(@NonNull HttpClient httpClient, @NonNull String serverUrl, @Nullable String authorization) {
+        URI uri = URI.create(serverUrl);
+        this.httpClient = httpClient;
+        this.serverHost = uri.getHost();
+        this.serverPort = HttpClient.normalizePort(uri.getScheme(), uri.getPort());
+        this.authorization = authorization;
+    }
+
+    /** @return true if the supplied URL can be fetched with this client. */
+    static boolean canFetch(String url) {
+        return url.regionMatches(true, 0, "http:", 0, 5);
+    }
+
+    /**
+     * Download the image at the supplied URL.
+     * <p>
+     * If a cached copy of the image is supplied, the request is conditional on its validators. If
+     * the image is not modified the cached copy is returned.
+     *
+     * @param url The URL of the image
+     * @param cached Cached copy of the image, or null
+     *
+     * @return The image with its validators, or null if the download failed.
+     */
+    @Nullable
+    ImageCache.DiskCacheImage fetch(@NonNull String url, @Nullable ImageCache.DiskCacheImage cached) {
+        Request request = httpClient.newRequest(url)
+                .method(HttpMethod.GET)
+                .followRedirects(true)
+                .timeout(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (authorization != null && isServer(request)) {
+            request.header(HttpHeader.AUTHORIZATION, authorization);
+        }
+        if (cached != null) {
+            if (cached.etag != null) {
+                request.header(HttpHeader.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.header(HttpHeader.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
+
+        InputStreamResponseListener listener = new InputStreamResponseListener();
+        request.send(listener);
+        try {
+            Response response = listener.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            try (InputStream in = listener.getInputStream()) {
+                int status = response.getStatus();
+                if (status == HttpStatus.NOT_MODIFIED_304 && cached != null) {
+                    return cached;
+                }
+                if (status != HttpStatus.OK_200) {
+                    Log.w(TAG, "fetch " + url + ": " + status + " " + response.getReason());
+                    return null;
+                }
+
+                HttpFields headers = response.getHeaders();
+                long contentLength = headers.getLongField(HttpHeader.CONTENT_LENGTH.asString());
+                if (contentLength > MAX_CONTENT_LENGTH) {
+                    throw new IOException("Image too large: " + contentLength);
+                }
+
+                ImageCache.DiskCacheImage image = new ImageCache.DiskCacheImage(
+                        (contentLength >= 0) ? readFully(in, (int) contentLength) : Util.toByteArray(in));
+                image.etag = headers.get(HttpHeader.ETAG);
+                image.lastModified = headers.get(HttpHeader.LAST_MODIFIED);
+                return image;
+            }
+        } catch (InterruptedException | TimeoutException | ExecutionException | IOException e) {
+            request.abort(e);
+            Log.e(TAG, "fetch " + url + ": " + e);
+            return null;
+        }
+    }
+
+    private boolean isServer(Request request) {
+        return serverHost.equalsIgnoreCase(request.getHost())
+                && serverPort == HttpClient.normalizePort(request.getScheme(), request.getPort());
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Expected " + length + " bytes, got " + offset);
+            }
+            offset += read;
+        }
+        return bytes;
+    }
+}
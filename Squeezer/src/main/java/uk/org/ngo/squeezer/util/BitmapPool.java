@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import uk.org.ngo.squeezer.BuildConfig;
+
+/**
+ * Pool of bitmaps which can be reused via {@link BitmapFactory.Options#inBitmap}.
+ * <p>
+ * Bitmaps are added to the pool when they are evicted from the memory cache. The pool is bucketed
+ * by allocation size, and a decode gets the smallest pooled bitmap which is large enough.
+ * <p>
+ * A bitmap evicted from the memory cache may still be shown on screen, so the pool keeps a
+ * reference count of the users of each bitmap, see {@link #acquire(Bitmap)} and
+ * {@link #release(Bitmap)}. A bitmap is only pooled when it's evicted and not in use. Bitmaps
+ * handed to code outside the image worker are marked as {@link #share(Bitmap) shared} and are
+ * never pooled.
+ */
+class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    /** Don't reuse a bitmap for a decode which needs less than this fraction of its allocation. */
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static final int SHARED = -1;
+
+    private final int maxSize;
+
+    private int size;
+
+    /** Pooled bitmaps by allocation byte count. */
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+
+    /** Reference count of bitmaps in use, or {@link #SHARED}. */
+    private final Map<Bitmap, int[]> references = new WeakHashMap<>();
+
+    /** Bitmaps evicted from the memory cache while in use. They're pooled when released. */
+    private final Map<Bitmap, Boolean> evicted = new WeakHashMap<>();
+
+    private int hitCount;
+    private int missCount;
+    private int putCount;
+    private int evictionCount;
+
+    /**
+     * @param maxSize Maximum number of bytes held by pooled bitmaps.
+     */
+    BitmapPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /** Register a new user of the supplied bitmap. */
+    synchronized void acquire(Bitmap bitmap) {
+        int[] count = references.get(bitmap);
+        if (count == null) {
+            references.put(bitmap, new int[]{1});
+        } else if (count[0] != SHARED) {
+            count[0]++;
+        }
+    }
+
+    /** A user of the supplied bitmap has stopped using it. */
+    synchronized void release(Bitmap bitmap) {
+        int[] count = references.get(bitmap);
+        if (count == null || count[0] == SHARED) {
+            return;
+        }
+        if (--count[0] <= 0) {
+            references.remove(bitmap);
+            if (evicted.remove(bitmap) != null) {
+                put(bitmap);
+            }
+        }
+    }
+
+    /** The supplied bitmap is used outside our control, so it will never be pooled. */
+    synchronized void share(Bitmap bitmap) {
+        int[] count = references.get(bitmap);
+        if (count == null) {
+            references.put(bitmap, new int[]{SHARED});
+        } else {
+            count[0] = SHARED;
+        }
+        evicted.remove(bitmap);
+    }
+
+    /** Called when the supplied bitmap is evicted from the memory cache. */
+    synchronized void onEvicted(Bitmap bitmap) {
+        if (references.containsKey(bitmap)) {
+            int[] count = references.get(bitmap);
+            if (count[0] != SHARED) {
+                evicted.put(bitmap, Boolean.TRUE);
+            }
+        } else {
+            put(bitmap);
+        }
+    }
+
+    private void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int byteCount = bitmap.getAllocationByteCount();
+        if (byteCount > maxSize) {
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = buckets.get(byteCount);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(byteCount, bucket);
+        }
+        bucket.push(bitmap);
+        size += byteCount;
+        putCount++;
+
+        // Drop the largest bitmaps first, as they're the least likely to fit a decode
+        while (size > maxSize) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = buckets.lastEntry();
+            largest.getValue().pollLast();
+            size -= largest.getKey();
+            evictionCount++;
+            if (largest.getValue().isEmpty()) {
+                buckets.remove(largest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Set {@link BitmapFactory.Options#inBitmap} to a pooled bitmap which can hold the result of
+     * the decode, if any.
+     *
+     * @param options Options which are populated with the bounds of the image, the inSampleSize
+     *     and the inPreferredConfig
+     */
+    synchronized void addInBitmapOptions(@NonNull BitmapFactory.Options options) {
+        // The decoder rounds inSampleSize down to a power of two
+        int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        int byteCount = width * height * getBytesPerPixel(options.inPreferredConfig);
+
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(byteCount);
+        if (entry == null || entry.getKey() > byteCount * MAX_SIZE_MULTIPLE) {
+            missCount++;
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        options.inBitmap = bucket.pop();
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+        size -= entry.getKey();
+        hitCount++;
+    }
+
+    /** Called if the decode failed to use the bitmap set by {@link #addInBitmapOptions(BitmapFactory.Options)} */
+    synchronized void onInBitmapRejected() {
+        hitCount--;
+        missCount++;
+    }
+
+    synchronized void clear() {
+        buckets.clear();
+        evicted.clear();
+        size = 0;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+
+    synchronized int hitCount() {
+        return hitCount;
+    }
+
+    synchronized int missCount() {
+        return missCount;
+    }
+
+    /** @return The fraction of decodes which reused a pooled bitmap */
+    synchronized float hitRate() {
+        int total = hitCount + missCount;
+        return (total == 0) ? 0 : (float) hitCount / total;
+    }
+
+    void logStats() {
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, toString());
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "BitmapPool{h: %d m: %d (%.2f%%) p: %d e: %d, size: %d of %d}",
+                hitCount, missCount, hitRate() * 100, putCount, evictionCount, size, maxSize);
+    }
+}
@@ -40,9 +40,12 @@ import java.lang.reflect.Array;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -93,6 +96,13 @@ import java.util.concurrent.TimeUnit;
  * observe the value at the time that {@link #get} was called. Updates and
  * removals after the call do not impact ongoing reads.
  *
+ * <p>Operations on distinct keys can proceed in parallel. The cache state is
+ * guarded by a single lock, which is only held for in-memory bookkeeping. File
+ * operations for a key are done while holding one of a fixed set of striped
+ * locks, so reads, commits and removals of the same key are serialized, while
+ * other keys are not blocked. Journal lines are buffered and written in batches
+ * by a background thread.
+ *
  * <p>This class is tolerant of some I/O errors. If files are missing from the
  * filesystem, the corresponding entries will be dropped from the cache. If
  * an error occurs while writing a cache value, the edit will fail silently.
@@ -112,6 +122,7 @@ public final class DiskLruCache implements Closeable {
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final int IO_BUFFER_SIZE = 8 * 1024;
+    private static final int STRIPE_COUNT = 16;
 
     /*
      * This cache uses a journal file named "journal". A typical journal file
@@ -160,7 +171,18 @@ public final class DiskLruCache implements Closeable {
     private final long maxSize;
     private final int valueCount;
     private long size = 0;
+    private boolean closed;
+
+    /** Guards {@link #journalWriter}. Must be taken before the cache lock, if both are needed. */
+    private final Object journalLock = new Object();
     private Writer journalWriter;
+
+    /** Journal lines not yet written to the journal file. */
+    private final StringBuilder journalBuffer = new StringBuilder();
+    private boolean journalWriteScheduled;
+
+    /** Locks for file operations on keys, see {@link #stripe(String)} */
+    private final Object[] stripes = new Object[STRIPE_COUNT];
     private final LinkedHashMap<String, Entry> lruEntries
             = new LinkedHashMap<String, Entry>(0, 0.75f, true);
     private int redundantOpCount;
@@ -268,25 +290,36 @@ public final class DiskLruCache implements Closeable {
         }
     }
 
-    /** This cache uses a single background thread to evict entries. */
+    /** This cache uses a single background thread to evict entries and write the journal. */
     private final ExecutorService executorService = new ThreadPoolExecutor(0, 1,
             60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
     private final Callable<Void> cleanupCallable = new Callable<Void>() {
         @Override
         public Void call() throws Exception {
             synchronized (DiskLruCache.this) {
-                if (journalWriter == null) {
-                    return null; // closed
+                if (closed) {
+                    return null;
                 }
-                trimToSize();
-                if (journalRebuildRequired()) {
-                    rebuildJournal();
-                    redundantOpCount = 0;
+            }
+            trimToSize();
+            synchronized (journalLock) {
+                synchronized (DiskLruCache.this) {
+                    if (!closed && journalRebuildRequired()) {
+                        rebuildJournal();
+                        redundantOpCount = 0;
+                    }
                 }
             }
             return null;
         }
     };
+    private final Callable<Void> journalCallable = new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+            writeJournal();
+            return null;
+        }
+    };
 
     private DiskLruCache(File directory, int appVersion, int valueCount, long maxSize) {
         this.directory = directory;
@@ -295,6 +328,40 @@ public final class DiskLruCache implements Closeable {
         this.journalFileTmp = new File(directory, JOURNAL_FILE_TMP);
         this.valueCount = valueCount;
         this.maxSize = maxSize;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /** @return The lock for file operations on the supplied key */
+    private Object stripe(String key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % STRIPE_COUNT];
+    }
+
+    /** Append a line to the journal. It's written by the background thread. */
+    private void journal(String line) {
+        journalBuffer.append(line).append('\n');
+        if (!journalWriteScheduled) {
+            journalWriteScheduled = true;
+            executorService.submit(journalCallable);
+        }
+    }
+
+    /** Write the buffered journal lines to the journal file. */
+    private void writeJournal() throws IOException {
+        synchronized (journalLock) {
+            String lines;
+            synchronized (this) {
+                journalWriteScheduled = false;
+                if (journalWriter == null || journalBuffer.length() == 0) {
+                    return;
+                }
+                lines = journalBuffer.toString();
+                journalBuffer.setLength(0);
+            }
+            journalWriter.write(lines);
+            journalWriter.flush();
+        }
     }
 
     /**
@@ -403,6 +470,8 @@ public final class DiskLruCache implements Closeable {
     /**
      * Computes the initial size and collects garbage as a part of opening the
      * cache. Dirty entries are assumed to be inconsistent and will be deleted.
+     * Files which don't belong to a clean entry are deleted too, as journal
+     * lines are written after the files they describe.
      */
     private void processJournal() throws IOException {
         deleteIfExists(journalFileTmp);
@@ -421,16 +490,51 @@ public final class DiskLruCache implements Closeable {
                 i.remove();
             }
         }
+        deleteUntrackedFiles();
+    }
+
+    /**
+     * Delete the files left by an earlier session, which the journal doesn't
+     * know about: dirty files created before their DIRTY line was written, and
+     * clean files committed or published before their CLEAN line was written.
+     */
+    private void deleteUntrackedFiles() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> tracked = new HashSet<>();
+        tracked.add(JOURNAL_FILE);
+        for (Entry entry : lruEntries.values()) {
+            for (int t = 0; t < valueCount; t++) {
+                tracked.add(entry.getCleanFile(t).getName());
+            }
+        }
+        for (File file : files) {
+            if (file.isFile() && !tracked.contains(file.getName())) {
+                deleteIfExists(file);
+            }
+        }
     }
 
     /**
      * Creates a new journal that omits redundant information. This replaces the
-     * current journal if it exists.
+     * current journal if it exists. Buffered journal lines are dropped, as the
+     * new journal has the current state of all entries.
      */
-    private synchronized void rebuildJournal() throws IOException {
+    private void rebuildJournal() throws IOException {
+        synchronized (journalLock) {
+            synchronized (this) {
+                rebuildJournalLocked();
+            }
+        }
+    }
+
+    private void rebuildJournalLocked() throws IOException {
         if (journalWriter != null) {
             journalWriter.close();
         }
+        journalBuffer.setLength(0);
 
         Writer writer = new BufferedWriter(new FileWriter(journalFileTmp), IO_BUFFER_SIZE);
         writer.write(MAGIC);
@@ -474,40 +578,53 @@ public final class DiskLruCache implements Closeable {
      * exist is not currently readable. If a value is returned, it is moved to
      * the head of the LRU queue.
      */
-    public synchronized Snapshot get(String key) throws IOException {
-        checkNotClosed();
-        validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (entry == null) {
-            return null;
-        }
+    public Snapshot get(String key) throws IOException {
+        synchronized (stripe(key)) {
+            long sequenceNumber;
+            Entry entry;
+            synchronized (this) {
+                checkNotClosed();
+                validateKey(key);
+                entry = lruEntries.get(key);
+                if (entry == null) {
+                    return null;
+                }
 
-        if (!entry.readable) {
-            return null;
-        }
+                if (!entry.readable) {
+                    return null;
+                }
+                sequenceNumber = entry.sequenceNumber;
+            }
 
-        /*
-         * Open all streams eagerly to guarantee that we see a single published
-         * snapshot. If we opened streams lazily then the streams could come
-         * from different edits.
-         */
-        InputStream[] ins = new InputStream[valueCount];
-        try {
-            for (int i = 0; i < valueCount; i++) {
-                ins[i] = new FileInputStream(entry.getCleanFile(i));
+            /*
+             * Open all streams eagerly to guarantee that we see a single published
+             * snapshot. If we opened streams lazily then the streams could come
+             * from different edits. Commits and removals of this key are excluded
+             * by the stripe lock.
+             */
+            InputStream[] ins = new InputStream[valueCount];
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    ins[i] = new FileInputStream(entry.getCleanFile(i));
+                }
+            } catch (FileNotFoundException e) {
+                // a file must have been deleted manually!
+                for (InputStream in : ins) {
+                    closeQuietly(in);
+                }
+                return null;
             }
-        } catch (FileNotFoundException e) {
-            // a file must have been deleted manually!
-            return null;
-        }
 
-        redundantOpCount++;
-        journalWriter.append(READ + ' ' + key + '\n');
-        if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
-        }
+            synchronized (this) {
+                redundantOpCount++;
+                journal(READ + ' ' + key);
+                if (journalRebuildRequired()) {
+                    executorService.submit(cleanupCallable);
+                }
+            }
 
-        return new Snapshot(key, entry.sequenceNumber, ins);
+            return new Snapshot(key, sequenceNumber, ins);
+        }
     }
 
     /**
@@ -536,9 +653,8 @@ public final class DiskLruCache implements Closeable {
         Editor editor = new Editor(entry);
         entry.currentEditor = editor;
 
-        // flush the journal before creating files to prevent file leaks
-        journalWriter.write(DIRTY + ' ' + key + '\n');
-        journalWriter.flush();
+        // Dirty files which are not in the journal are deleted when the cache is opened
+        journal(DIRTY + ' ' + key);
         return editor;
     }
 
@@ -566,53 +682,70 @@ public final class DiskLruCache implements Closeable {
         return size;
     }
 
-    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+    private void completeEdit(Editor editor, boolean success) throws IOException {
         Entry entry = editor.entry;
-        if (entry.currentEditor != editor) {
-            throw new IllegalStateException();
-        }
-
-        // if this edit is creating the entry for the first time, every index must have a value
-        if (success && !entry.readable) {
-            for (int i = 0; i < valueCount; i++) {
-                if (!entry.getDirtyFile(i).exists()) {
-                    editor.abort();
-                    throw new IllegalStateException("edit didn't create file " + i);
+        synchronized (stripe(entry.key)) {
+            boolean readable;
+            synchronized (this) {
+                if (entry.currentEditor != editor) {
+                    throw new IllegalStateException();
                 }
+                readable = entry.readable;
             }
-        }
 
-        for (int i = 0; i < valueCount; i++) {
-            File dirty = entry.getDirtyFile(i);
-            if (success) {
-                if (dirty.exists()) {
-                    File clean = entry.getCleanFile(i);
-                    dirty.renameTo(clean);
-                    long oldLength = entry.lengths[i];
-                    long newLength = clean.length();
-                    entry.lengths[i] = newLength;
-                    size = size - oldLength + newLength;
+            // if this edit is creating the entry for the first time, every index must have a value
+            if (success && !readable) {
+                for (int i = 0; i < valueCount; i++) {
+                    if (!entry.getDirtyFile(i).exists()) {
+                        editor.abort();
+                        throw new IllegalStateException("edit didn't create file " + i);
+                    }
                 }
-            } else {
-                deleteIfExists(dirty);
             }
-        }
 
-        redundantOpCount++;
-        entry.currentEditor = null;
-        if (entry.readable | success) {
-            entry.readable = true;
-            journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
-            if (success) {
-                entry.sequenceNumber = nextSequenceNumber++;
+            // Publish the files outside the cache lock, readers of this key are excluded by the
+            // stripe lock
+            long[] newLengths = new long[valueCount];
+            boolean[] published = new boolean[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                File dirty = entry.getDirtyFile(i);
+                if (success) {
+                    if (dirty.exists()) {
+                        File clean = entry.getCleanFile(i);
+                        dirty.renameTo(clean);
+                        newLengths[i] = clean.length();
+                        published[i] = true;
+                    }
+                } else {
+                    deleteIfExists(dirty);
+                }
             }
-        } else {
-            lruEntries.remove(entry.key);
-            journalWriter.write(REMOVE + ' ' + entry.key + '\n');
-        }
 
-        if (size > maxSize || journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+            synchronized (this) {
+                for (int i = 0; i < valueCount; i++) {
+                    if (published[i]) {
+                        size = size - entry.lengths[i] + newLengths[i];
+                        entry.lengths[i] = newLengths[i];
+                    }
+                }
+
+                redundantOpCount++;
+                entry.currentEditor = null;
+                if (entry.readable | success) {
+                    entry.readable = true;
+                    journal(CLEAN + ' ' + entry.key + entry.getLengths());
+                    if (success) {
+                        entry.sequenceNumber = nextSequenceNumber++;
+                    }
+                } else {
+                    lruEntries.remove(entry.key);
+                    journal(REMOVE + ' ' + entry.key);
+                }
+
+                if (size > maxSize || journalRebuildRequired()) {
+                    executorService.submit(cleanupCallable);
+                }
+            }
         }
     }
 
@@ -632,41 +765,48 @@ public final class DiskLruCache implements Closeable {
      *
      * @return true if an entry was removed.
      */
-    public synchronized boolean remove(String key) throws IOException {
-        checkNotClosed();
-        validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (entry == null || entry.currentEditor != null) {
-            return false;
-        }
+    public boolean remove(String key) throws IOException {
+        synchronized (stripe(key)) {
+            Entry entry;
+            synchronized (this) {
+                checkNotClosed();
+                validateKey(key);
+                entry = lruEntries.get(key);
+                if (entry == null || entry.currentEditor != null) {
+                    return false;
+                }
 
-        for (int i = 0; i < valueCount; i++) {
-            File file = entry.getCleanFile(i);
-            deleteIfExists(file);
-            size -= entry.lengths[i];
-            entry.lengths[i] = 0;
-        }
+                for (int i = 0; i < valueCount; i++) {
+                    size -= entry.lengths[i];
+                    entry.lengths[i] = 0;
+                }
 
-        redundantOpCount++;
-        journalWriter.append(REMOVE + ' ' + key + '\n');
-        lruEntries.remove(key);
+                redundantOpCount++;
+                journal(REMOVE + ' ' + key);
+                lruEntries.remove(key);
 
-        if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
-        }
+                if (journalRebuildRequired()) {
+                    executorService.submit(cleanupCallable);
+                }
+            }
 
-        return true;
+            for (int i = 0; i < valueCount; i++) {
+                deleteIfExists(entry.getCleanFile(i));
+            }
+
+            return true;
+        }
     }
 
     /**
      * Returns true if this cache has been closed.
      */
-    public boolean isClosed() {
-        return journalWriter == null;
+    public synchronized boolean isClosed() {
+        return closed;
     }
 
     private void checkNotClosed() {
-        if (journalWriter == null) {
+        if (closed) {
             throw new IllegalStateException("cache is closed");
         }
     }
@@ -674,35 +814,74 @@ public final class DiskLruCache implements Closeable {
     /**
      * Force buffered operations to the filesystem.
      */
-    public synchronized void flush() throws IOException {
-        checkNotClosed();
+    public void flush() throws IOException {
+        synchronized (this) {
+            checkNotClosed();
+        }
         trimToSize();
-        journalWriter.flush();
+        writeJournal();
     }
 
     /**
      * Closes this cache. Stored values will remain on the filesystem.
      */
     @Override
-    public synchronized void close() throws IOException {
-        if (journalWriter == null) {
-            return; // already closed
+    public void close() throws IOException {
+        List<Editor> editors = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return; // already closed
+            }
+            for (Entry entry : lruEntries.values()) {
+                if (entry.currentEditor != null) {
+                    editors.add(entry.currentEditor);
+                }
+            }
         }
-        for (Entry entry : new ArrayList<Entry>(lruEntries.values())) {
-            if (entry.currentEditor != null) {
-                entry.currentEditor.abort();
+        for (Editor editor : editors) {
+            try {
+                editor.abort();
+            } catch (IllegalStateException e) {
+                // The edit was completed concurrently
             }
         }
         trimToSize();
-        journalWriter.close();
-        journalWriter = null;
+        writeJournal();
+        synchronized (journalLock) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                journalBuffer.setLength(0);
+            }
+            journalWriter.close();
+            journalWriter = null;
+        }
     }
 
+    /**
+     * Evict the least recently used entries, until the size is within the limit. Entries
+     * which are being edited are skipped.
+     */
     private void trimToSize() throws IOException {
-        while (size > maxSize) {
-//            Map.Entry<String, Entry> toEvict = lruEntries.eldest();
-            final Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
-            remove(toEvict.getKey());
+        while (true) {
+            String key = null;
+            synchronized (this) {
+                if (size <= maxSize) {
+                    return;
+                }
+                for (Entry entry : lruEntries.values()) {
+                    if (entry.currentEditor == null) {
+                        key = entry.key;
+                        break;
+                    }
+                }
+            }
+            if (key == null) {
+                return;
+            }
+            remove(key);
         }
     }
 
@@ -37,6 +37,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
 
 import uk.org.ngo.squeezer.BuildConfig;
 import uk.org.ngo.squeezer.Util;
@@ -51,6 +53,9 @@ public class ImageCache {
     // Default memory cache size
     private static final int DEFAULT_MEM_CACHE_SIZE = 1024 * 1024 * 5; // 5MB
 
+    // Default size of the pool of reusable bitmaps, relative to the memory cache size
+    private static final float DEFAULT_BITMAP_POOL_SIZE_PERCENT = 0.25f;
+
     // Default disk cache size
     private static final int MAX_DISK_CACHE_SIZE = 1024 * 1024 * 100; // 100MB
 
@@ -62,8 +67,16 @@ public class ImageCache {
 
     private static final int DEFAULT_COMPRESS_QUALITY = 70;
 
+    // Version of the disk cache format. An existing cache in another format is cleared.
+    private static final int DISK_CACHE_VERSION = 2;
+
+    // Each disk cache entry has the image bytes, and the dimensions of the image
+    private static final int DISK_CACHE_VALUE_COUNT = 2;
+
     private static final int DISK_CACHE_INDEX = 0;
 
+    private static final int DISK_CACHE_METADATA_INDEX = 1;
+
     // Constants to easily toggle various caches
     private static final boolean DEFAULT_MEM_CACHE_ENABLED = true;
 
@@ -77,12 +90,21 @@ public class ImageCache {
 
     private LruCache<String, Bitmap> mMemoryCache;
 
+    private BitmapPool mBitmapPool;
+
     private ImageCacheParams mCacheParams;
 
+    /**
+     * Guards the life cycle of the disk cache. Reads and writes only hold it to get the current
+     * disk cache; the {@link DiskLruCache} allows concurrent access to distinct keys.
+     */
     private final Object mDiskCacheLock = new Object();
 
     private boolean mDiskCacheStarting = true;
 
+    /** See {@link #setLastScan(long)} */
+    private volatile long mLastScan;
+
     /**
      * Creating a new ImageCache object using the specified parameters.
      *
@@ -142,11 +164,19 @@ public class ImageCache {
             if (BuildConfig.DEBUG) {
                 Log.d(TAG, "Memory cache created (size = " + mCacheParams.memCacheSize + ")");
             }
+            mBitmapPool = new BitmapPool(Math.round(mCacheParams.memCacheSize * mCacheParams.bitmapPoolSizePercent));
             mMemoryCache = new LruCache<String, Bitmap>(mCacheParams.memCacheSize) {
                 @Override
                 protected int sizeOf(String key, Bitmap bitmap) {
                     return (bitmap.getRowBytes() * bitmap.getHeight());
                 }
+
+                @Override
+                protected void entryRemoved(boolean evicted, @NonNull String key, @NonNull Bitmap oldValue, @Nullable Bitmap newValue) {
+                    if (newValue == null) {
+                        mBitmapPool.onEvicted(oldValue);
+                    }
+                }
             };
         }
 
@@ -182,7 +212,7 @@ public class ImageCache {
 
                     if (usableSpace > diskCacheSize) {
                         try {
-                            mDiskLruCache = DiskLruCache.open(diskCacheDir, 1, 1, diskCacheSize);
+                            mDiskLruCache = DiskLruCache.open(diskCacheDir, DISK_CACHE_VERSION, DISK_CACHE_VALUE_COUNT, diskCacheSize);
                             if (BuildConfig.DEBUG) {
                                 Log.d(TAG, "Disk cache initialized in " + diskCacheDir);
                             }
@@ -241,63 +271,108 @@ public class ImageCache {
             return;
         }
 
-        synchronized (mDiskCacheLock) {
-            // Add to disk cache
-            if (mDiskLruCache != null) {
-                final String key = hashKeyForDisk(data);
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
-                    if (snapshot == null) {
-                        final DiskLruCache.Editor editor = mDiskLruCache.edit(key);
-                        if (editor != null) {
-                            try (OutputStream out = editor.newOutputStream(DISK_CACHE_INDEX)) {
-                                bitmap.compress(mCacheParams.compressFormat, mCacheParams.compressQuality, out);
-                                editor.commit();
-                            }
-                        }
+        // Add to disk cache
+        final DiskLruCache diskLruCache = getDiskCache(false);
+        if (diskLruCache != null) {
+            final String key = hashKeyForDisk(data);
+            try {
+                final DiskLruCache.Editor editor = diskLruCache.edit(key);
+                if (editor != null) {
+                    try (OutputStream out = editor.newOutputStream(DISK_CACHE_INDEX)) {
+                        // Keep transparency, f.e. of icons
+                        CompressFormat compressFormat = bitmap.hasAlpha() ? CompressFormat.PNG : mCacheParams.compressFormat;
+                        bitmap.compress(compressFormat, mCacheParams.compressQuality, out);
+                        editor.set(DISK_CACHE_METADATA_INDEX, formatMetadata(bitmap.getWidth(), bitmap.getHeight(), null, null, mLastScan));
+                        editor.commit();
                     }
-                } catch (final IOException e) {
-                    Log.e(TAG, "addBitmapToCache - " + e);
-                } catch (Exception e) {
-                    Log.e(TAG, "addBitmapToCache - " + e);
                 }
+            } catch (final IOException e) {
+                Log.e(TAG, "addBitmapToCache - " + e);
+            } catch (Exception e) {
+                Log.e(TAG, "addBitmapToCache - " + e);
             }
         }
     }
 
     /**
-     * Adds a byte[] to the disk cache.
+     * Adds the bytes of an image to the disk cache, along with the dimensions of the image, so it
+     * can later be decoded without first decoding the bounds, and the validators of the image, so
+     * it can be revalidated.
      *
      * @param data Unique identifier for the bitmap to store
-     * @param bytes The bytes to store
+     * @param image The image to store
      */
-    public void addBytesToDiskCache(String data, byte[] bytes) {
-        if (data == null || bytes.length == 0) {
+    public void addImageToDiskCache(String data, DiskCacheImage image) {
+        if (data == null || image.bytes.length == 0) {
             return;
         }
 
-        synchronized (mDiskCacheLock) {
-            // Add to disk cache
-            if (mDiskLruCache != null) {
-                final String key = hashKeyForDisk(data);
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
-                    if (snapshot == null) {
-                        final DiskLruCache.Editor editor = mDiskLruCache.edit(key);
-                        if (editor != null) {
-                            try (OutputStream out = editor.newOutputStream(DISK_CACHE_INDEX)) {
-                                out.write(bytes);
-                                editor.commit();
-                            }
-                        }
+        // Add to disk cache
+        final DiskLruCache diskLruCache = getDiskCache(false);
+        if (diskLruCache != null) {
+            final String key = hashKeyForDisk(data);
+            try {
+                final DiskLruCache.Editor editor = diskLruCache.edit(key);
+                if (editor != null) {
+                    try (OutputStream out = editor.newOutputStream(DISK_CACHE_INDEX)) {
+                        out.write(image.bytes);
+                        image.lastScan = mLastScan;
+                        editor.set(DISK_CACHE_METADATA_INDEX, formatMetadata(image.width, image.height, image.etag, image.lastModified, image.lastScan));
+                        editor.commit();
                     }
-                } catch (final IOException e) {
-                    Log.e(TAG, "addBitmapToCache - " + e);
-                } catch (Exception e) {
-                    Log.e(TAG, "addBitmapToCache - " + e);
                 }
+            } catch (final IOException e) {
+                Log.e(TAG, "addBitmapToCache - " + e);
+            } catch (Exception e) {
+                Log.e(TAG, "addBitmapToCache - " + e);
             }
         }
     }
 
+    /**
+     * Mark an image in the disk cache as current, after it has been revalidated. Only the
+     * metadata of the image is written.
+     *
+     * @param data Unique identifier for the image
+     * @param image The revalidated image
+     */
+    public void updateDiskCacheMetadata(String data, DiskCacheImage image) {
+        final DiskLruCache diskLruCache = getDiskCache(false);
+        if (diskLruCache != null) {
+            try {
+                final DiskLruCache.Editor editor = diskLruCache.edit(hashKeyForDisk(data));
+                if (editor != null) {
+                    image.lastScan = mLastScan;
+                    editor.set(DISK_CACHE_METADATA_INDEX, formatMetadata(image.width, image.height, image.etag, image.lastModified, image.lastScan));
+                    editor.commit();
+                }
+            } catch (IOException | IllegalStateException e) {
+                Log.e(TAG, "updateDiskCacheMetadata - " + e);
+            }
+        }
+    }
+
+    /**
+     * Set the time of the last scan of the music library on the server. Images which were
+     * cached before the scan are considered stale, see {@link #isStale(DiskCacheImage)}.
+     *
+     * @return true if the time of the last scan changed
+     */
+    public boolean setLastScan(long lastScan) {
+        long previous = mLastScan;
+        mLastScan = lastScan;
+        return previous != lastScan;
+    }
+
+    /**
+     * @return true if the supplied image was cached before the last scan of the music library,
+     * so it may have changed.
+     */
+    public boolean isStale(DiskCacheImage image) {
+        final long lastScan = mLastScan;
+        return lastScan != 0 && image.lastScan != lastScan;
+    }
+
     /**
      * Get from memory cache.
      *
@@ -327,6 +402,63 @@ public class ImageCache {
         return bitmap;
     }
 
+    /**
+     * Get from memory cache, and register a user of the bitmap, so it's not reused by the
+     * {@link BitmapPool} while in use. Call {@link BitmapPool#release(Bitmap)} when done.
+     *
+     * @param data Unique identifier for which item to get
+     *
+     * @return The bitmap if found in cache, null otherwise
+     */
+    @Nullable
+    Bitmap acquireBitmapFromMemCache(String data) {
+        if (mMemoryCache == null) {
+            return null;
+        }
+        synchronized (mBitmapPool) {
+            Bitmap bitmap = mMemoryCache.get(data);
+            if (bitmap != null) {
+                mBitmapPool.acquire(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Get from memory cache, and mark the bitmap as shared, so it's never reused by the
+     * {@link BitmapPool}.
+     *
+     * @param data Unique identifier for which item to get
+     *
+     * @return The bitmap if found in cache, null otherwise
+     */
+    @Nullable
+    Bitmap shareBitmapFromMemCache(String data) {
+        if (mMemoryCache == null) {
+            return null;
+        }
+        synchronized (mBitmapPool) {
+            Bitmap bitmap = mMemoryCache.get(data);
+            if (bitmap != null) {
+                mBitmapPool.share(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    /** @return The keys of the bitmaps in the memory cache */
+    @NonNull
+    public Set<String> getMemCacheKeys() {
+        return (mMemoryCache != null) ? mMemoryCache.snapshot().keySet() : Collections.emptySet();
+    }
+
+    /** Remove a bitmap from the memory cache. */
+    public void removeBitmapFromMemCache(String data) {
+        if (mMemoryCache != null) {
+            mMemoryCache.remove(data);
+        }
+    }
+
     /**
      * Get from disk cache.
      *
@@ -337,30 +469,23 @@ public class ImageCache {
     @Nullable
     public Bitmap getBitmapFromDiskCache(String data) {
         final String key = hashKeyForDisk(data);
-        synchronized (mDiskCacheLock) {
-            while (mDiskCacheStarting) {
-                try {
-                    mDiskCacheLock.wait();
-                } catch (InterruptedException e) {
-                }
-            }
-            if (mDiskLruCache != null) {
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
-                    if (snapshot != null) {
-                        if (BuildConfig.DEBUG) {
-                            Log.d(TAG, "Disk cache hit");
-                        }
-                        final InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                        if (inputStream != null) {
-                            return BitmapFactory.decodeStream(inputStream);
-                        }
+        final DiskLruCache diskLruCache = getDiskCache(true);
+        if (diskLruCache != null) {
+            try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
+                if (snapshot != null) {
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Disk cache hit");
+                    }
+                    final InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+                    if (inputStream != null) {
+                        return BitmapFactory.decodeStream(inputStream);
                     }
-                } catch (final IOException e) {
-                    Log.e(TAG, "getBitmapFromDiskCache - " + e);
                 }
+            } catch (final IOException | IllegalStateException e) {
+                Log.e(TAG, "getBitmapFromDiskCache - " + e);
             }
-            return null;
         }
+        return null;
     }
 
     /**
@@ -372,30 +497,60 @@ public class ImageCache {
      */
     @Nullable
     public byte[] getBytesFromDiskCache(String data) {
+        DiskCacheImage image = getImageFromDiskCache(data);
+        return (image != null) ? image.bytes : null;
+    }
+
+    /**
+     * Get the bytes and the dimensions of an image from disk cache.
+     *
+     * @param data Unique identifier for which item to get
+     *
+     * @return The image at that entry in the cache, null otherwise
+     */
+    @Nullable
+    public DiskCacheImage getImageFromDiskCache(String data) {
         final String key = hashKeyForDisk(data);
+        final DiskLruCache diskLruCache = getDiskCache(true);
+        if (diskLruCache != null) {
+            try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
+                if (snapshot != null) {
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Disk cache hit");
+                    }
+                    InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+                    if (inputStream != null) {
+                        DiskCacheImage image = new DiskCacheImage(Util.toByteArray(inputStream));
+                        parseMetadata(snapshot.getString(DISK_CACHE_METADATA_INDEX), image);
+                        return image;
+                    }
+                }
+            } catch (final IOException | IllegalStateException e) {
+                Log.e(TAG, "getBitmapFromDiskCache - " + e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the current disk cache. The returned cache may be closed concurrently by
+     * {@link #clearCache()} or {@link #close()}, in which case it throws
+     * {@link IllegalStateException}.
+     *
+     * @param waitForStart Wait for the disk cache to be initialized
+     *
+     * @return The disk cache, or null if it's not available
+     */
+    @Nullable
+    private DiskLruCache getDiskCache(boolean waitForStart) {
         synchronized (mDiskCacheLock) {
-            while (mDiskCacheStarting) {
+            while (waitForStart && mDiskCacheStarting) {
                 try {
                     mDiskCacheLock.wait();
                 } catch (InterruptedException e) {
                 }
             }
-            if (mDiskLruCache != null) {
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
-                    if (snapshot != null) {
-                        if (BuildConfig.DEBUG) {
-                            Log.d(TAG, "Disk cache hit");
-                        }
-                        InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                        if (inputStream != null) {
-                            return Util.toByteArray(inputStream);
-                        }
-                    }
-                } catch (final IOException e) {
-                    Log.e(TAG, "getBitmapFromDiskCache - " + e);
-                }
-            }
-            return null;
+            return mDiskLruCache;
         }
     }
 
@@ -426,10 +581,21 @@ public class ImageCache {
     public void clearMemoryCache() {
         if (mMemoryCache != null) {
             mMemoryCache.evictAll();
+            mBitmapPool.logStats();
+            mBitmapPool.clear();
             Log.d(TAG, "Memory cache cleared");
         }
     }
 
+    /**
+     * @return The pool of bitmaps evicted from the memory cache, or null if the memory cache is
+     * disabled
+     */
+    @Nullable
+    BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
     /**
      * Flushes the disk cache associated with this ImageCache object. Note that this includes disk
      * access so this should not be executed on the main/UI thread.
@@ -471,6 +637,67 @@ public class ImageCache {
         }
     }
 
+    /**
+     * The metadata is "width height lastScan" on the first line, optionally followed by lines with
+     * the ETag and the Last-Modified date of the image (empty if unknown).
+     */
+    private static String formatMetadata(int width, int height, @Nullable String etag, @Nullable String lastModified, long lastScan) {
+        String metadata = width + " " + height + " " + lastScan;
+        if (etag != null || lastModified != null) {
+            metadata += "\n" + (etag != null ? etag : "") + "\n" + (lastModified != null ? lastModified : "");
+        }
+        return metadata;
+    }
+
+    private static void parseMetadata(String metadata, DiskCacheImage image) {
+        String[] lines = metadata.split("\n", -1);
+        String[] fields = lines[0].split(" ");
+        if (fields.length >= 2) {
+            image.width = (int) Util.parseDecimalInt(fields[0], 0);
+            image.height = (int) Util.parseDecimalInt(fields[1], 0);
+        }
+        if (fields.length >= 3) {
+            image.lastScan = Util.parseDecimalInt(fields[2], 0);
+        }
+        if (lines.length == 3) {
+            image.etag = TextUtils.isEmpty(lines[1]) ? null : lines[1];
+            image.lastModified = TextUtils.isEmpty(lines[2]) ? null : lines[2];
+        }
+    }
+
+    /**
+     * The bytes of an image in the disk cache, the dimensions of the image if they are
+     * known (otherwise 0), and the validators of the image if they are known.
+     */
+    public static class DiskCacheImage {
+        @NonNull
+        public final byte[] bytes;
+
+        public int width;
+
+        public int height;
+
+        /** ETag of the image, for conditional requests. */
+        @Nullable
+        public String etag;
+
+        /** Last-Modified date of the image, for conditional requests. */
+        @Nullable
+        public String lastModified;
+
+        /** Time of the last scan of the music library when the image was cached. */
+        public long lastScan;
+
+        /** @return true if the image can be revalidated with a conditional request. */
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        DiskCacheImage(@NonNull byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
     /**
      * A holder class that contains cache parameters.
      */
@@ -478,6 +705,8 @@ public class ImageCache {
 
         public int memCacheSize = DEFAULT_MEM_CACHE_SIZE;
 
+        public final float bitmapPoolSizePercent = DEFAULT_BITMAP_POOL_SIZE_PERCENT;
+
         public float diskCacheSizePercent = DEFAULT_DISK_CACHE_SIZE_PERCENT;
 
         public final int maxDiskCacheSize = MAX_DISK_CACHE_SIZE;
@@ -19,8 +19,11 @@ package uk.org.ngo.squeezer.util;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 
+import org.eclipse.jetty.client.HttpClient;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -28,6 +31,8 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.Util;
@@ -40,6 +45,23 @@ public class ImageFetcher extends ImageWorker {
 
     private volatile static ImageFetcher sImageFetcher;
 
+    /**
+     * Server artwork which LMS can resize, by adding a size suffix, f.e. "cover_100x100_o".
+     * Group 1 is the URL up to the resize suffix, group 2 is the extension if any.
+     */
+    private static final Pattern resizablePattern = Pattern.compile("^(.*/music/[^/]+/cover|.*/imageproxy/.+/image)(\\.\\w+)?$");
+
+    /**
+     * Server artwork identified by coverid, f.e. "/music/1a2b3c4d/cover". The coverid is derived
+     * from the artwork, so the image at the URL never changes. Artwork identified by track id
+     * (all digits) or "current" may change when the music library is scanned.
+     */
+    private static final Pattern immutablePattern = Pattern.compile("^.*/music/(?=[0-9a-f]{8}/)[0-9]*[a-f][0-9a-f]*/cover(_\\w+)?(\\.\\w+)?$");
+
+    /** Client for plain http artwork, if connected to a server. */
+    @Nullable
+    private volatile ArtworkHttpClient mHttpClient;
+
     private ImageFetcher(Context context) {
         super(context);
     }
@@ -80,22 +102,80 @@ public class ImageFetcher extends ImageWorker {
     }
 
     /**
-     * The main process method, which will be called by the ImageWorker in the AsyncTask background
-     * thread.
+     * Download plain http artwork with the supplied client, which keeps persistent connections
+     * to the server.
+     *
+     * @param httpClient Started client of the server connection
+     * @param serverUrl URL of the server
+     * @param authorization Value of the authorization header for requests to the server, if any
+     */
+    public void setHttpClient(@NonNull HttpClient httpClient, @NonNull String serverUrl, @Nullable String authorization) {
+        mHttpClient = new ArtworkHttpClient(httpClient, serverUrl, authorization);
+    }
+
+    @Override
+    protected boolean canResize(Object data) {
+        return resizablePattern.matcher(data.toString()).matches();
+    }
+
+    @Override
+    protected boolean isImmutable(Object data) {
+        return immutablePattern.matcher(data.toString()).matches();
+    }
+
+    /**
+     * @return The URL for the supplied image, resized by the server to fit inside the supplied
+     * size, or the original URL if the server can't resize the image.
+     */
+    @NonNull
+    static String resizedUrl(@NonNull String url, int size) {
+        if (size <= 0) {
+            return url;
+        }
+        Matcher matcher = resizablePattern.matcher(url);
+        if (!matcher.matches()) {
+            return url;
+        }
+        String extension = matcher.group(2);
+        return matcher.group(1) + "_" + size + "x" + size + "_o" + (extension != null ? extension : "");
+    }
+
+    /**
+     * The main process method, which will be called by the ImageWorker in a background thread.
      *
      * @param params The parameters for this request.
+     * @param cached Stale copy of the image to revalidate, or null. Only revalidated if the
+     *     image is fetched with the {@link ArtworkHttpClient}.
      *
      * @return Undecoded bytes for the requested bitmap, null if downloading failed.
      */
-    protected byte[] processBitmap(BitmapWorkerTaskParams params) {
+    @Nullable
+    @Override
+    protected ImageCache.DiskCacheImage processBitmap(BitmapWorkerTaskParams params, @Nullable ImageCache.DiskCacheImage cached) {
         if (params == null || params.data == null) {
             Log.w(TAG, "processBitmap was called without any data " + params + " abandon");
             return null;
         }
 
-        String data = params.data.toString();
+        String data = resizedUrl(params.data.toString(), params.sizeBucket);
         Log.d(TAG, "processBitmap: " + data);
 
+        final ArtworkHttpClient httpClient = mHttpClient;
+        if (httpClient != null && ArtworkHttpClient.canFetch(data)) {
+            return httpClient.fetch(data, cached);
+        }
+
+        byte[] bytes = downloadUrl(data);
+        return (bytes != null) ? new ImageCache.DiskCacheImage(bytes) : null;
+    }
+
+    /**
+     * Download with {@link HttpURLConnection}, for URLs the {@link ArtworkHttpClient} can't fetch.
+     *
+     * @return The downloaded bytes, null if downloading failed.
+     */
+    @Nullable
+    private static byte[] downloadUrl(String data) {
         HttpURLConnection urlConnection = null;
         InputStream in = null;
         byte[] bytes = null;
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.org.ngo.squeezer.BuildConfig;
+
+/**
+ * Runs the stages of image loads, on two lanes with separate limits on the number of concurrent
+ * stages: one for disk cache reads and decodes, and one for network fetches.
+ * <p>
+ * Queued stages are not run in order. When a lane has room, it picks the stage of the request
+ * which is visible and most recently requested, so after a fast scroll the images on screen are
+ * loaded first. Stages of cancelled requests are dropped from the queue.
+ */
+class ImageLoadScheduler {
+    private static final String TAG = "ImageLoadScheduler";
+
+    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            return new Thread(r, "ImageLoad #" + mCount.getAndIncrement());
+        }
+    };
+
+    /** Threads for both lanes. The lanes limit the number of threads in use. */
+    private static final ExecutorService sExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            30L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), sThreadFactory);
+
+    /** A request which has stages run by the scheduler. */
+    interface Request {
+        /** @return true if the result is no longer needed. Queued stages are dropped. */
+        boolean isCancelled();
+
+        /**
+         * @return true if the result will be shown on screen. Called with the scheduler locked,
+         * so it must not block or touch the view hierarchy.
+         */
+        boolean isVisible();
+
+        /** @return A number which increases with each request. More recent requests run first. */
+        long getRequestOrder();
+    }
+
+    /** Lane for disk cache reads and decodes. */
+    final Lane cacheLane;
+
+    /** Lane for network fetches. */
+    final Lane networkLane;
+
+    /** Guarded by this. */
+    private boolean mPaused;
+
+    /**
+     * @param maxDecodes Maximum number of concurrent disk cache reads and decodes
+     * @param maxNetworkFetches Maximum number of concurrent network fetches
+     */
+    ImageLoadScheduler(int maxDecodes, int maxNetworkFetches) {
+        cacheLane = new Lane("cache", maxDecodes);
+        networkLane = new Lane("network", maxNetworkFetches);
+    }
+
+    /** While paused, queued stages are not started. Stages already running are not affected. */
+    void setPaused(boolean paused) {
+        synchronized (this) {
+            mPaused = paused;
+        }
+        if (!paused) {
+            cacheLane.schedule();
+            networkLane.schedule();
+        }
+    }
+
+    private static class Stage {
+        final Request request;
+        final Runnable runnable;
+
+        Stage(Request request, Runnable runnable) {
+            this.request = request;
+            this.runnable = runnable;
+        }
+    }
+
+    class Lane {
+        private final String name;
+        private final int maxRunning;
+
+        /** Guarded by the scheduler. */
+        private final List<Stage> queue = new ArrayList<>();
+        private int running;
+
+        private Lane(String name, int maxRunning) {
+            this.name = name;
+            this.maxRunning = maxRunning;
+        }
+
+        /** Queue a stage of the supplied request. */
+        void execute(Request request, Runnable stage) {
+            synchronized (ImageLoadScheduler.this) {
+                queue.add(new Stage(request, stage));
+            }
+            schedule();
+        }
+
+        /** Start workers while there are queued stages and room in this lane. */
+        private void schedule() {
+            synchronized (ImageLoadScheduler.this) {
+                while (!mPaused && running < maxRunning && running < queue.size()) {
+                    running++;
+                    sExecutor.execute(worker);
+                }
+            }
+        }
+
+        /**
+         * Remove the stage to run next from the queue. Stages of cancelled requests are dropped.
+         *
+         * @return The next stage, or null if there is none, or the scheduler is paused.
+         */
+        private Stage next() {
+            if (mPaused) {
+                return null;
+            }
+
+            // The priority of each request is read once, the flags are set on the main thread so
+            // no locks are taken while the queue is scanned.
+            Stage best = null;
+            boolean bestVisible = false;
+            long bestOrder = 0;
+            int dropped = 0;
+            for (Iterator<Stage> it = queue.iterator(); it.hasNext(); ) {
+                Stage stage = it.next();
+                Request request = stage.request;
+                if (request.isCancelled()) {
+                    it.remove();
+                    dropped++;
+                    continue;
+                }
+                boolean visible = request.isVisible();
+                long order = request.getRequestOrder();
+                if (best == null || (visible != bestVisible ? visible : order > bestOrder)) {
+                    best = stage;
+                    bestVisible = visible;
+                    bestOrder = order;
+                }
+            }
+            if (BuildConfig.DEBUG && dropped > 0) {
+                Log.d(TAG, name + ": dropped " + dropped + " cancelled, " + queue.size() + " queued");
+            }
+
+            if (best != null) {
+                queue.remove(best);
+            }
+            return best;
+        }
+
+        private final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Stage stage;
+                    synchronized (ImageLoadScheduler.this) {
+                        stage = next();
+                        if (stage == null) {
+                            running--;
+                            return;
+                        }
+                    }
+                    try {
+                        stage.runnable.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, name + ": stage failed", e);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -48,7 +48,13 @@ import android.widget.ImageView;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import uk.org.ngo.squeezer.BuildConfig;
 import uk.org.ngo.squeezer.Util;
@@ -64,6 +70,10 @@ public abstract class ImageWorker {
 
     private static final int FADE_IN_TIME = 200;
 
+    /** Sizes of downscaled image variants, see {@link #sizeBucket(int, int)} */
+    private static final int MIN_SIZE_BUCKET = 64;
+    private static final int MAX_SIZE_BUCKET = 1024;
+
     private ImageCache mImageCache;
 
     private Bitmap mLoadingBitmap;
@@ -74,10 +84,24 @@ public abstract class ImageWorker {
 
     protected boolean mPauseWork = false;
 
-    private final Object mPauseWorkLock = new Object();
-
     protected final Resources mResources;
 
+    /** Tasks in progress by memory cache key, so concurrent requests can share them. Guarded by itself. */
+    private final Map<String, BitmapWorkerTask> mInFlightTasks = new HashMap<>();
+
+    /** Maximum number of concurrent disk cache reads and decodes. */
+    private static final int MAX_DECODES = 2;
+
+    /** Maximum number of concurrent image downloads. */
+    private static final int MAX_NETWORK_FETCHES = 3;
+
+    private final ImageLoadScheduler mScheduler = new ImageLoadScheduler(MAX_DECODES, MAX_NETWORK_FETCHES);
+
+    /** Source of {@link BitmapWorkerTask#getRequestOrder()} */
+    private final AtomicLong mRequestCounter = new AtomicLong();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
     @IntDef({MESSAGE_CLEAR, MESSAGE_INIT_DISK_CACHE, MESSAGE_FLUSH, MESSAGE_CLOSE,
             MESSAGE_CLEAR_MEMORY_CACHE})
     @Retention(RetentionPolicy.SOURCE)
@@ -106,11 +130,11 @@ public abstract class ImageWorker {
 
     /**
      * Load an image specified by the data parameter into an ImageView (override {@link
-     * ImageWorker#processBitmap(BitmapWorkerTaskParams)} to define the processing logic). A memory and disk cache
+     * ImageWorker#processBitmap(BitmapWorkerTaskParams, ImageCache.DiskCacheImage)} to define the processing logic). A memory and disk cache
      * will be used if an {@link ImageCache} has been set using {@link
      * ImageWorker#setImageCache(ImageCache)}. If the image is found in the memory cache, it is set
-     * immediately, otherwise an {@link AsyncTask} will be created to asynchronously load the
-     * bitmap.
+     * immediately, otherwise a task will be queued on the {@link ImageLoadScheduler} to
+     * asynchronously load the bitmap.
      *
      * @param data The URL of the image to download
      * @param imageView The ImageView to bind the downloaded image to
@@ -173,7 +197,7 @@ public abstract class ImageWorker {
         String memCacheKey = hashKeyForMemory(String.valueOf(data), width, height);
 
         if (mImageCache != null) {
-            bitmap = mImageCache.getBitmapFromMemCache(memCacheKey);
+            bitmap = mImageCache.acquireBitmapFromMemCache(memCacheKey);
         }
 
         if (bitmap != null) {
@@ -181,21 +205,22 @@ public abstract class ImageWorker {
             if (BuildConfig.DEBUG) {
                 addDebugSwatch(new Canvas(bitmap), mCacheDebugColorMemory);
             }
+            Drawable previousDrawable = imageView.getDrawable();
             imageView.setImageBitmap(bitmap);
+            releaseBitmaps(previousDrawable);
             if (callback != null) {
                 callback.onDone();
             }
         } else if (cancelPotentialWork(data, imageView)) {
-            final ImageViewBitmapWorkerTask task = new ImageViewBitmapWorkerTask(imageView, callback);
+            final BitmapWorkerTask task = execute(new BitmapWorkerTaskParams(width, height, data, memCacheKey),
+                    new ImageViewTarget(imageView, callback));
             final AsyncDrawable asyncDrawable =
                     new AsyncDrawable(mResources, mLoadingBitmap, task);
+            Drawable previousDrawable = imageView.getDrawable();
             imageView.setImageDrawable(asyncDrawable);
-
-            // NOTE: This uses a custom version of AsyncTask that has been pulled from the
-            // framework and slightly modified. Refer to the docs at the top of the class
-            // for more info on what was changed.
-            task.executeOnExecutor(AsyncTask.DUAL_THREAD_EXECUTOR,
-                    new BitmapWorkerTaskParams(width, height, data, memCacheKey));
+            releaseBitmaps(previousDrawable);
+            // The image view target is only visible once the task is attached to the view
+            task.updateVisibility();
         }
     }
 
@@ -236,7 +261,7 @@ public abstract class ImageWorker {
         Bitmap bitmap = null;
         String memCacheKey = hashKeyForMemory(String.valueOf(data), width, height);
         if (mImageCache != null) {
-            bitmap = mImageCache.getBitmapFromMemCache(memCacheKey);
+            bitmap = mImageCache.shareBitmapFromMemCache(memCacheKey);
         }
 
         if (bitmap != null) {
@@ -246,10 +271,106 @@ public abstract class ImageWorker {
             }
             callback.process(data, bitmap);
         } else {
-            final CallbackBitmapWorkerTask task = new CallbackBitmapWorkerTask(callback);
+            execute(new BitmapWorkerTaskParams(width, height, data, memCacheKey), new CallbackTarget(callback));
+        }
+    }
+
+    /**
+     * Handle of a prefetch started by {@link #prefetch(Object, int, int)}.
+     */
+    public interface Prefetch {
+        /**
+         * The image is no longer needed. The load is cancelled, unless the image is also being
+         * loaded for a view or a callback.
+         */
+        void cancel();
+    }
+
+    /**
+     * Load an image in to the disk and memory caches, so it can be shown without delay when
+     * {@link #loadImage(Object, ImageView)} is called for a view of the supplied size.
+     * <p>
+     * Prefetches are never visible, so they run after the loads of images on screen.
+     *
+     * @param data The URL of the image to download
+     * @param width Width of the view which will show the image
+     * @param height Height of the view which will show the image
+     *
+     * @return A handle to cancel the prefetch, or null if there is nothing to load.
+     */
+    @Nullable
+    public Prefetch prefetch(final Object data, int width, int height) {
+        if (data == null || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        String memCacheKey = hashKeyForMemory(String.valueOf(data), width, height);
+        if (mImageCache != null && mImageCache.getBitmapFromMemCache(memCacheKey) != null) {
+            return null;
+        }
+
+        PrefetchTarget target = new PrefetchTarget();
+        target.task = execute(new BitmapWorkerTaskParams(width, height, data, memCacheKey), target);
+        return target;
+    }
+
+    /**
+     * Start a task to load the requested bitmap, unless the same bitmap (same data and size) is
+     * already being loaded. In that case the target is added to the task in progress, so
+     * concurrent requests share one download and one decode.
+     *
+     * @return The task which will deliver the bitmap to the target
+     */
+    private BitmapWorkerTask execute(BitmapWorkerTaskParams params, LoadTarget target) {
+        BitmapWorkerTask task;
+        boolean joined;
+        synchronized (mInFlightTasks) {
+            task = mInFlightTasks.get(params.memCacheKey);
+            joined = (task != null && task.addTarget(target));
+            if (joined) {
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "execute - joined work in progress for " + params.data);
+                }
+            } else {
+                task = new BitmapWorkerTask(params);
+                task.addTarget(target);
+                mInFlightTasks.put(params.memCacheKey, task);
+            }
+        }
 
-            task.executeOnExecutor(AsyncTask.DUAL_THREAD_EXECUTOR,
-                    new BitmapWorkerTaskParams(width, height, data, memCacheKey));
+        // Record the visibility before the task is queued, so the scheduler sees it
+        task.updateVisibility();
+        if (!joined) {
+            task.start();
+        }
+        return task;
+    }
+
+    @Nullable
+    private BitmapPool getBitmapPool() {
+        final ImageCache imageCache = mImageCache;
+        return (imageCache != null) ? imageCache.getBitmapPool() : null;
+    }
+
+    /**
+     * The supplied drawable is no longer shown. Release the bitmaps it holds, so they can be
+     * reused when evicted from the memory cache.
+     */
+    private void releaseBitmaps(@Nullable Drawable drawable) {
+        final BitmapPool bitmapPool = getBitmapPool();
+        if (bitmapPool == null) {
+            return;
+        }
+        if (drawable instanceof LayerDrawable) {
+            LayerDrawable layerDrawable = (LayerDrawable) drawable;
+            for (int i = 0; i < layerDrawable.getNumberOfLayers(); i++) {
+                releaseBitmaps(layerDrawable.getDrawable(i));
+            }
+        } else if (drawable instanceof BitmapDrawable && !(drawable instanceof AsyncDrawable)) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                bitmapPool.release(bitmap);
+            }
         }
     }
 
@@ -267,6 +388,12 @@ public abstract class ImageWorker {
         return TextUtils.join(":", Arrays.asList(width, height, data));
     }
 
+    /** @return The data of the supplied key from {@link #hashKeyForMemory(String, int, int)} */
+    @NonNull
+    private static String dataForMemoryKey(@NonNull String memCacheKey) {
+        return memCacheKey.substring(memCacheKey.indexOf(':', memCacheKey.indexOf(':') + 1) + 1);
+    }
+
     /**
      * Set placeholder bitmap that shows when the the background thread is running.
      *
@@ -371,9 +498,14 @@ public abstract class ImageWorker {
      * @param params The parameters to identify which image to process, as provided by {@link
      * ImageWorker#loadImage(Object, ImageView)}
      *
-     * @return The processed bitmap, or null if processing failed.
+     * @param cached A stale copy of the image from the disk cache, which has validators. If it's
+     * still valid, the implementation may return it instead of the image.
+     *
+     * @return The undecoded bytes of the image, and its validators if known, or null if
+     * processing failed.
      */
-    protected abstract byte[] processBitmap(BitmapWorkerTaskParams params);
+    @Nullable
+    protected abstract ImageCache.DiskCacheImage processBitmap(BitmapWorkerTaskParams params, @Nullable ImageCache.DiskCacheImage cached);
 
     /**
      * Cancels any pending work attached to the provided ImageView.
@@ -383,7 +515,7 @@ public abstract class ImageWorker {
     public static void cancelWork(ImageView imageView) {
         final BitmapWorkerTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
         if (bitmapWorkerTask != null) {
-            bitmapWorkerTask.cancel(true);
+            bitmapWorkerTask.detach(imageView);
             if (BuildConfig.DEBUG) {
                 final Object bitmapData = bitmapWorkerTask.data;
                 Log.d(TAG, "cancelWork - cancelled work for " + bitmapData);
@@ -402,7 +534,7 @@ public abstract class ImageWorker {
         if (bitmapWorkerTask != null) {
             final Object bitmapData = bitmapWorkerTask.data;
             if (bitmapData == null || !bitmapData.equals(data)) {
-                bitmapWorkerTask.cancel(true);
+                bitmapWorkerTask.detach(imageView);
                 if (BuildConfig.DEBUG) {
                     Log.d(TAG, "cancelPotentialWork - cancelled work for " + data);
                 }
@@ -446,12 +578,19 @@ public abstract class ImageWorker {
         @NonNull
         public final String memCacheKey;
 
+        /**
+         * Size of the downscaled variant of the image to use for this request, or 0 to use the
+         * original image. See {@link #sizeBucket(int, int)}.
+         */
+        public final int sizeBucket;
+
         public BitmapWorkerTaskParams(int width, int height,
                                       @NonNull Object data, @NonNull String memCacheKey) {
             this.width = width;
             this.height = height;
             this.data = data;
             this.memCacheKey = memCacheKey;
+            this.sizeBucket = sizeBucket(width, height);
         }
 
         @Override
@@ -461,100 +600,451 @@ public abstract class ImageWorker {
                     ", height=" + height +
                     ", data=" + data +
                     ", memCacheKey='" + memCacheKey + '\'' +
+                    ", sizeBucket=" + sizeBucket +
                     '}';
         }
     }
 
     /**
-     * The actual AsyncTask that will asynchronously process the image.
+     * Downscaled variants of images are stored in the disk cache, so a small image can be shown
+     * without decoding and downsampling the original image. To limit the number of variants,
+     * the requested size is rounded up to a power of two.
+     *
+     * @return The size (both width and height) of the variant which can serve the requested size,
+     * or 0 if the original image should be used.
+     */
+    static int sizeBucket(int width, int height) {
+        int size = Math.max(width, height);
+        if (size <= 0 || size > MAX_SIZE_BUCKET) {
+            return 0;
+        }
+        return Math.max(MIN_SIZE_BUCKET, Integer.highestOneBit(size - 1) << 1);
+    }
+
+    /** @return The disk cache key for the variant of the supplied image in the supplied size bucket */
+    private static String variantKey(String data, int sizeBucket) {
+        return data + "@" + sizeBucket;
+    }
+
+    /**
+     * Subclasses which can fetch downscaled images from the source (f.e. the server can resize
+     * images) should override this.
+     *
+     * @return true if {@link #processBitmap(BitmapWorkerTaskParams, ImageCache.DiskCacheImage)} fetches the supplied image
+     * downscaled to {@link BitmapWorkerTaskParams#sizeBucket}.
+     */
+    protected boolean canResize(Object data) {
+        return false;
+    }
+
+    /**
+     * Subclasses which can tell that an image never changes (f.e. the identity of the image is
+     * part of its URL) should override this.
+     *
+     * @return true if the supplied image doesn't change when the music library is scanned, so
+     * it is never revalidated.
+     */
+    protected boolean isImmutable(Object data) {
+        return false;
+    }
+
+    /**
+     * Set the time of the last scan of the music library on the server. If it changed, images
+     * which may have changed are removed from the memory cache, and cached images are
+     * revalidated before use.
+     *
+     * @param lastScan Time of the last scan, as reported by the server
+     */
+    public void setLastScan(long lastScan) {
+        final ImageCache imageCache = mImageCache;
+        if (imageCache == null || !imageCache.setLastScan(lastScan)) {
+            return;
+        }
+
+        int removed = 0;
+        for (String memCacheKey : imageCache.getMemCacheKeys()) {
+            if (!isImmutable(dataForMemoryKey(memCacheKey))) {
+                imageCache.removeBitmapFromMemCache(memCacheKey);
+                removed++;
+            }
+        }
+        Log.i(TAG, "setLastScan(" + lastScan + "): removed " + removed + " images from memory cache");
+    }
+
+    /**
+     * The load of a bitmap, run in stages by the {@link ImageLoadScheduler}: the disk cache
+     * lookup, the network fetch if the image is not cached, and the decode.
+     * <p>
+     * The loaded bitmap is delivered to all the targets of the task. Targets can be added while
+     * the task is in progress, and the task is only cancelled when no target is left.
      */
-    private class BitmapWorkerTask extends AsyncTask<BitmapWorkerTaskParams, Void, Bitmap> {
+    private class BitmapWorkerTask implements ImageLoadScheduler.Request {
         protected static final String TAG = "BitmapWorkerTask";
-        protected Object data;
+        protected final Object data;
+        private final String memCacheKey;
+        private final BitmapWorkerTaskParams params;
+
+        /** Where to deliver the bitmap. Guarded by {@link #mInFlightTasks}. */
+        private final List<LoadTarget> targets = new ArrayList<>();
+
+        /** Set when the task is done or cancelled, so no more targets can be added. Guarded by {@link #mInFlightTasks}. */
+        private boolean finished;
+
+        private volatile boolean cancelled;
+
+        /** See {@link ImageLoadScheduler.Request#getRequestOrder()}. Updated when a target is added. */
+        private volatile long requestOrder;
 
         /**
-         * Background processing.
+         * See {@link ImageLoadScheduler.Request#isVisible()}. Recorded on the main thread by
+         * {@link #updateVisibility()}, so the scheduler doesn't read the views from its threads.
          */
-        @Override
-        protected Bitmap doInBackground(BitmapWorkerTaskParams... params) {
-            if (BuildConfig.DEBUG) {
-                Log.d(TAG, "doInBackground - starting work");
-            }
+        private volatile boolean visible;
+
+        BitmapWorkerTask(BitmapWorkerTaskParams params) {
+            this.params = params;
+            data = params.data;
+            memCacheKey = params.memCacheKey;
+        }
 
-            boolean loadedFromNetwork = false;
+        /** Queue the first stage of the task. */
+        void start() {
+            mScheduler.cacheLane.execute(this, this::loadFromCache);
+        }
 
-            data = params[0].data;
-            final String dataString = String.valueOf(data);
-            byte[] bytes = null;
-            Bitmap scaledBitmap = null;
+        /** @return false if the task has already finished, and the target was not added. */
+        boolean addTarget(LoadTarget target) {
+            synchronized (mInFlightTasks) {
+                if (finished) {
+                    return false;
+                }
+                targets.add(target);
+                requestOrder = mRequestCounter.incrementAndGet();
+                return true;
+            }
+        }
 
-            // Wait here if work is paused and the task is not cancelled
-            synchronized (mPauseWorkLock) {
-                while (mPauseWork && !isCancelled()) {
-                    try {
-                        mPauseWorkLock.wait();
-                    } catch (InterruptedException e) {
+        /**
+         * Stop delivering the bitmap to the supplied image view. Cancel the task if no other
+         * target is waiting for it.
+         */
+        void detach(ImageView imageView) {
+            synchronized (mInFlightTasks) {
+                for (Iterator<LoadTarget> it = targets.iterator(); it.hasNext(); ) {
+                    if (it.next().isFor(imageView)) {
+                        it.remove();
                     }
                 }
+                cancelIfUnused();
+            }
+            updateVisibility();
+        }
+
+        /**
+         * Stop delivering the bitmap to the supplied target. Cancel the task if no other target
+         * is waiting for it.
+         */
+        void detach(LoadTarget target) {
+            synchronized (mInFlightTasks) {
+                targets.remove(target);
+                cancelIfUnused();
+            }
+            updateVisibility();
+        }
+
+        /**
+         * Record if a target is an image view on screen, or a callback. Called when the targets
+         * change or the views may have moved. The views are only read on the main thread, so
+         * calls from other threads are posted there.
+         */
+        void updateVisibility() {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                mMainHandler.post(this::updateVisibility);
+                return;
+            }
+
+            List<LoadTarget> targets;
+            synchronized (mInFlightTasks) {
+                targets = new ArrayList<>(this.targets);
+            }
+            boolean visible = false;
+            for (LoadTarget target : targets) {
+                if (target.isVisible(this)) {
+                    visible = true;
+                    break;
+                }
+            }
+            this.visible = visible;
+        }
+
+        /** Cancel the task if it has no targets. Guarded by {@link #mInFlightTasks}. */
+        private void cancelIfUnused() {
+            if (targets.isEmpty()) {
+                finish();
+                cancelled = true;
+            }
+        }
+
+        /** Remove this task from the tasks in progress, and return the targets. */
+        private List<LoadTarget> finish() {
+            synchronized (mInFlightTasks) {
+                finished = true;
+                if (mInFlightTasks.get(memCacheKey) == this) {
+                    mInFlightTasks.remove(memCacheKey);
+                }
+                return new ArrayList<>(targets);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** @return The visibility last recorded by {@link #updateVisibility()}. */
+        @Override
+        public boolean isVisible() {
+            return visible;
+        }
+
+        @Override
+        public long getRequestOrder() {
+            return requestOrder;
+        }
+
+        /**
+         * First stage, on the cache lane. If the image bytes are in the disk cache, decode them
+         * now, otherwise queue a network fetch.
+         */
+        private void loadFromCache() {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "loadFromCache - starting work");
             }
 
-            // If the image cache is available and this task has not been cancelled by another
-            // thread and there's nothing to indicate this task should cancel then try and fetch
-            // the bitmap bytes from the cache.
-            if (mImageCache != null && !isCancelled() && !shouldCancel()) {
-                bytes = mImageCache.getBytesFromDiskCache(dataString);
+            Bitmap bitmap = null;
+            boolean fetching = false;
+            try {
+                // If the image cache is available and this task has not been cancelled by another
+                // thread and there's nothing to indicate this task should cancel then try and fetch
+                // the bitmap bytes from the cache.
+                // Prefer a downscaled variant of the image, then the original image.
+                // Skip images which may have changed in the last scan of the music library. If
+                // such an image can be revalidated, it's passed on to the network fetch.
+                final String variantKey = variantKey();
+                final String fetchKey = fetchKey();
+                ImageCache.DiskCacheImage image = null;
+                ImageCache.DiskCacheImage staleImage = null;
+                boolean isVariant = false;
+                if (mImageCache != null && !isCancelled() && !shouldCancel()) {
+                    final String[] keys = (variantKey != null)
+                            ? new String[]{variantKey, String.valueOf(data)}
+                            : new String[]{String.valueOf(data)};
+                    for (String key : keys) {
+                        ImageCache.DiskCacheImage found = mImageCache.getImageFromDiskCache(key);
+                        if (found == null || found.bytes.length == 0) {
+                            continue;
+                        }
+                        if (!mImageCache.isStale(found) || isImmutable(data)) {
+                            image = found;
+                            isVariant = key.equals(variantKey);
+                            break;
+                        }
+                        if (key.equals(fetchKey) && found.hasValidators()) {
+                            staleImage = found;
+                            break;
+                        }
+                    }
+                }
+
+                if (image != null) {
+                    bitmap = decode(image.bytes, image.width, image.height, isVariant);
+                } else if (!isCancelled() && !shouldCancel()) {
+                    // If the bitmap was not found in the cache and this task has not been
+                    // cancelled by another thread and there's nothing to indicate that this task
+                    // should cancel, then fetch it on the network lane.
+                    final ImageCache.DiskCacheImage cached = staleImage;
+                    mScheduler.networkLane.execute(this, () -> loadFromNetwork(cached));
+                    fetching = true;
+                }
+            } finally {
+                if (!fetching) {
+                    deliver(bitmap, false);
+                }
             }
+        }
 
-            // If the bitmap was not found in the cache and this task has not been cancelled by
-            // another thread and there's nothing to indicate that this task should cancel, then
-            // call the main process method (as implemented by a subclass)
-            if ((bytes == null || bytes.length == 0) && !isCancelled() && !shouldCancel()) {
-                bytes = processBitmap(params[0]);
-                loadedFromNetwork = true;
+        /**
+         * Second stage, on the network lane. Call the main process method (as implemented by a
+         * subclass), store the result in the disk cache, and queue the decode.
+         *
+         * @param cached Stale copy of the image to revalidate, or null
+         */
+        private void loadFromNetwork(@Nullable ImageCache.DiskCacheImage cached) {
+            boolean decoding = false;
+            try {
+                if (isCancelled() || shouldCancel()) {
+                    return;
+                }
+                final ImageCache.DiskCacheImage image = processBitmap(params, cached);
+
+                // If the bitmap bytes were loaded then add them and the dimensions of the image
+                // to the disk cache. If the cached copy is still valid, only mark it as current.
+                // If the image was downscaled by the source, it's stored as a variant.
+                if (image != null && image.bytes.length != 0) {
+                    final String fetchKey = fetchKey();
+                    final boolean isVariant = !fetchKey.equals(String.valueOf(data));
+                    if (image == cached) {
+                        if (mImageCache != null) {
+                            mImageCache.updateDiskCacheMetadata(fetchKey, image);
+                        }
+                    } else {
+                        BitmapFactory.Options options = decodeBounds(image.bytes);
+                        image.width = options.outWidth;
+                        image.height = options.outHeight;
+                        if (mImageCache != null) {
+                            mImageCache.addImageToDiskCache(fetchKey, image);
+                        }
+                    }
 
-                // If the bitmap bytes were loaded then add them to the disk cache.
-                if (bytes != null && bytes.length != 0 && mImageCache != null) {
-                    mImageCache.addBytesToDiskCache(dataString, bytes);
+                    mScheduler.cacheLane.execute(this, () -> {
+                        Bitmap bitmap = null;
+                        try {
+                            bitmap = decode(image.bytes, image.width, image.height, isVariant);
+                        } finally {
+                            deliver(bitmap, true);
+                        }
+                    });
+                    decoding = true;
+                }
+            } finally {
+                if (!decoding) {
+                    deliver(null, true);
                 }
             }
+        }
+
+        /** @return The disk cache key of the downscaled variant for this request, if any */
+        @Nullable
+        private String variantKey() {
+            return (params.sizeBucket > 0) ? ImageWorker.variantKey(String.valueOf(data), params.sizeBucket) : null;
+        }
 
-            // Create a bitmap from the bytes, scaled to the appropriate size.
-            if (bytes != null && bytes.length != 0 && params[0].width > 0 && params[0].height > 0) {
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        /**
+         * @return The disk cache key for the image fetched by {@link #processBitmap(BitmapWorkerTaskParams, ImageCache.DiskCacheImage)}
+         */
+        @NonNull
+        private String fetchKey() {
+            final String variantKey = variantKey();
+            return (variantKey != null && canResize(data)) ? variantKey : String.valueOf(data);
+        }
 
-                options.inSampleSize = calculateInSampleSize(
-                        options, params[0].width, params[0].height);
+        /**
+         * Create a bitmap from the bytes, scaled to the appropriate size.
+         *
+         * @param imageWidth Width of the encoded image, or 0 if unknown
+         * @param imageHeight Height of the encoded image, or 0 if unknown
+         * @param isVariant The bytes are a downscaled variant of the image
+         */
+        @Nullable
+        private Bitmap decode(byte[] bytes, int imageWidth, int imageHeight, boolean isVariant) {
+            if (isCancelled() || params.width <= 0 || params.height <= 0) {
+                return null;
+            }
 
-                options.inJustDecodeBounds = false;
+            // Use the dimensions from the disk cache if we have them, so the bytes are only
+            // decoded once.
+            BitmapFactory.Options options;
+            if (imageWidth > 0 && imageHeight > 0) {
+                options = new BitmapFactory.Options();
+                options.outWidth = imageWidth;
+                options.outHeight = imageHeight;
+            } else {
+                options = decodeBounds(bytes);
+            }
 
-                // Create a mutable bitmap so it can be post processed.
-                options.inMutable = true;
+            // Scale to the size bucket, so the result can be stored as a variant which
+            // serves all requests in the bucket.
+            final int sizeBucket = params.sizeBucket;
+            options.inSampleSize = (sizeBucket > 0)
+                    ? calculateInSampleSize(options, sizeBucket, sizeBucket)
+                    : calculateInSampleSize(options, params.width, params.height);
+
+            options.inJustDecodeBounds = false;
+
+            // Create a mutable bitmap so it can be post processed, and reuse a bitmap
+            // evicted from the memory cache if possible.
+            options.inMutable = true;
+            final BitmapPool bitmapPool = getBitmapPool();
+            if (bitmapPool != null) {
+                bitmapPool.addInBitmapOptions(options);
+            }
+            Bitmap scaledBitmap;
+            try {
                 scaledBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap can't hold the decoded image
+                if (options.inBitmap == null) {
+                    throw e;
+                }
+                bitmapPool.onInBitmapRejected();
+                options.inBitmap = null;
+                scaledBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            }
+
+            // Store a downscaled variant, so the next load for this size bucket can skip
+            // the downsampling of the original image.
+            final String variantKey = variantKey();
+            if (scaledBitmap != null && variantKey != null && !isVariant && mImageCache != null
+                    && options.inSampleSize > 1) {
+                mImageCache.addBitmapToDiskCache(variantKey, scaledBitmap);
             }
 
+            return scaledBitmap;
+        }
+
+        /**
+         * Last stage. Cache the bitmap, and deliver it to the targets on the main thread.
+         */
+        private void deliver(@Nullable final Bitmap bitmap, boolean loadedFromNetwork) {
             // If the bitmap was processed and the image cache is available, then add the processed
             // bitmap to the memory cache for future use. Note we don't check if the task was
             // cancelled here, if it was, and the thread is still running, we may as well add the
             // processed bitmap to our cache as it might be used again in the future.
-            if (scaledBitmap != null && mImageCache != null) {
-                mImageCache.addBitmapToMemoryCache(params[0].memCacheKey, scaledBitmap);
+            // The task holds a reference to the bitmap until it's delivered to the targets.
+            if (bitmap != null && mImageCache != null) {
+                final BitmapPool bitmapPool = getBitmapPool();
+                if (bitmapPool != null) {
+                    bitmapPool.acquire(bitmap);
+                }
+                mImageCache.addBitmapToMemoryCache(memCacheKey, bitmap);
             }
 
             if (BuildConfig.DEBUG) {
-                Log.d(TAG, "doInBackground - finished work");
+                Log.d(TAG, "deliver - finished work");
             }
 
-            if (BuildConfig.DEBUG && scaledBitmap != null) {
+            if (BuildConfig.DEBUG && bitmap != null) {
                 if (loadedFromNetwork) {
-                    addDebugSwatch(new Canvas(scaledBitmap), mCacheDebugColorNetwork);
+                    addDebugSwatch(new Canvas(bitmap), mCacheDebugColorNetwork);
                 } else {
-                    addDebugSwatch(new Canvas(scaledBitmap), mCacheDebugColorDisk);
+                    addDebugSwatch(new Canvas(bitmap), mCacheDebugColorDisk);
                 }
-
             }
-            return scaledBitmap;
+
+            mMainHandler.post(() -> {
+                if (isCancelled()) {
+                    onCancelled(bitmap);
+                } else {
+                    onPostExecute(bitmap);
+                }
+            });
+        }
+
+        private BitmapFactory.Options decodeBounds(byte[] bytes) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            return options;
         }
 
         /**
@@ -606,49 +1096,92 @@ public abstract class ImageWorker {
             return inSampleSize;
         }
 
-        @Override
-        protected void onCancelled(Bitmap bitmap) {
-            super.onCancelled(bitmap);
-            synchronized (mPauseWorkLock) {
-                mPauseWorkLock.notifyAll();
+        /**
+         * Once the image is processed, deliver it to the targets
+         */
+        private void onPostExecute(Bitmap bitmap) {
+            for (LoadTarget target : finish()) {
+                target.onLoaded(this, bitmap);
+            }
+            releaseTaskBitmap(bitmap);
+        }
+
+        private void onCancelled(Bitmap bitmap) {
+            finish();
+            releaseTaskBitmap(bitmap);
+        }
+
+        private void releaseTaskBitmap(@Nullable Bitmap bitmap) {
+            final BitmapPool bitmapPool = getBitmapPool();
+            if (bitmap != null && bitmapPool != null) {
+                bitmapPool.release(bitmap);
             }
         }
 
         /**
          * Determines whether bitmap processing should abort early.
          *
-         * @return The value of {@code mExitTasksEarly}.
+         * @return true if {@code mExitTasksEarly} is set, and no target is waiting for the bitmap.
          */
         protected boolean shouldCancel() {
-            return mExitTasksEarly;
+            if (!mExitTasksEarly) {
+                return false;
+            }
+            synchronized (mInFlightTasks) {
+                for (LoadTarget target : targets) {
+                    if (target.isWaiting(this)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
         }
     }
 
     /**
-     * A specialisation of {@link BitmapWorkerTask} that sets the loaded bitmap in to an
-     * {@link ImageView}.
+     * A receiver of a bitmap loaded by a {@link BitmapWorkerTask}.
+     */
+    private interface LoadTarget {
+        /** Called on the main thread with the loaded bitmap, which may be null. */
+        void onLoaded(BitmapWorkerTask task, @Nullable Bitmap bitmap);
+
+        /** @return true if this target is still waiting for the bitmap of the supplied task. */
+        boolean isWaiting(BitmapWorkerTask task);
+
+        /**
+         * Called on the main thread.
+         *
+         * @return true if the bitmap of the supplied task will be shown on screen.
+         */
+        boolean isVisible(BitmapWorkerTask task);
+
+        /** @return true if this target sets the bitmap in to the supplied image view. */
+        boolean isFor(ImageView imageView);
+    }
+
+    /**
+     * A {@link LoadTarget} that sets the loaded bitmap in to an {@link ImageView}.
      */
-    private class ImageViewBitmapWorkerTask extends BitmapWorkerTask {
+    private class ImageViewTarget implements LoadTarget {
         protected final WeakReference<ImageView> imageViewReference;
-        private LoadImageCallback callback;
+        private final LoadImageCallback callback;
 
-        public ImageViewBitmapWorkerTask(ImageView imageView, LoadImageCallback callback) {
-            super();
+        public ImageViewTarget(ImageView imageView, LoadImageCallback callback) {
             imageViewReference = new WeakReference<>(imageView);
             this.callback = callback;
         }
 
         /**
-         * Once the image is processed, associates it to the imageView
+         * Associates the processed image to the imageView
          */
         @Override
-        protected void onPostExecute(Bitmap bitmap) {
-            // if cancel was called on this task or the "exit early" flag is set then we're done
-            if (isCancelled() || mExitTasksEarly) {
+        public void onLoaded(BitmapWorkerTask task, @Nullable Bitmap bitmap) {
+            // if the "exit early" flag is set then we're done
+            if (mExitTasksEarly) {
                 bitmap = null;
             }
 
-            final ImageView imageView = getAttachedImageView();
+            final ImageView imageView = getAttachedImageView(task);
             if (bitmap != null && imageView != null) {
                 if (BuildConfig.DEBUG) {
                     Log.d(TAG, "onPostExecute - setting bitmap");
@@ -657,60 +1190,115 @@ public abstract class ImageWorker {
             }
         }
 
-        protected boolean shouldCancel() {
-            return super.shouldCancel() && getAttachedImageView() == null;
+        @Override
+        public boolean isWaiting(BitmapWorkerTask task) {
+            return getAttachedImageView(task) != null;
+        }
+
+        @Override
+        public boolean isVisible(BitmapWorkerTask task) {
+            final ImageView imageView = getAttachedImageView(task);
+            return imageView != null && imageView.isShown();
+        }
+
+        @Override
+        public boolean isFor(ImageView imageView) {
+            return imageViewReference.get() == imageView;
         }
 
         /**
-         * Returns the ImageView associated with this task as long as the ImageView's task still
-         * points to this task as well. Returns null otherwise.
+         * Returns the ImageView associated with this target as long as the ImageView's task still
+         * points to the supplied task as well. Returns null otherwise.
          */
-        protected ImageView getAttachedImageView() {
+        private ImageView getAttachedImageView(BitmapWorkerTask task) {
             final ImageView imageView = imageViewReference.get();
             final BitmapWorkerTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
 
-            if (this == bitmapWorkerTask) {
+            if (task == bitmapWorkerTask) {
                 return imageView;
             }
 
             return null;
         }
-
     }
 
     /**
-     * A specialisation of {@link BitmapWorkerTask} that passed the loaded bitmap to a callback
-     * for further processing.
+     * A {@link LoadTarget} that passes the loaded bitmap to a callback for further processing.
      */
-    private class CallbackBitmapWorkerTask extends BitmapWorkerTask {
-        protected static final String TAG = "CallbackBitmapWorkerTas";
+    private class CallbackTarget implements LoadTarget {
+        private final ImageWorkerCallback mCallback;
 
-        private ImageWorkerCallback mCallback;
-
-        public CallbackBitmapWorkerTask(ImageWorkerCallback callback) {
+        public CallbackTarget(ImageWorkerCallback callback) {
             mCallback = callback;
         }
 
         @Override
-        protected void onPostExecute(Bitmap bitmap) {
+        public void onLoaded(BitmapWorkerTask task, @Nullable Bitmap bitmap) {
             Log.d(TAG, "callback: onPostExecute()");
-            if (isCancelled() || shouldCancel()) {
-                bitmap = null;
+            final BitmapPool bitmapPool = getBitmapPool();
+            if (bitmap != null && bitmapPool != null) {
+                // The callback may keep the bitmap, so it can't be reused
+                bitmapPool.share(bitmap);
             }
+            mCallback.process(task.data, bitmap);
+        }
 
-            Log.d(TAG, "onPostExecute - setting bitmap");
-            mCallback.process(data, bitmap);
+        /**
+         * @return Always returns true, the processing is not aborted before the callback is called.
+         */
+        @Override
+        public boolean isWaiting(BitmapWorkerTask task) {
+            return true;
         }
 
         /**
-         * @return Always returns false, the processing is not aborted before the callback is called.
+         * @return Always returns true, the callback can't tell if the bitmap will be shown.
          */
         @Override
-        protected boolean shouldCancel() {
+        public boolean isVisible(BitmapWorkerTask task) {
+            return true;
+        }
+
+        @Override
+        public boolean isFor(ImageView imageView) {
             return false;
         }
     }
 
+    /**
+     * A {@link LoadTarget} for a prefetch. The bitmap is only stored in the caches.
+     */
+    private class PrefetchTarget implements LoadTarget, Prefetch {
+        private BitmapWorkerTask task;
+
+        @Override
+        public void onLoaded(BitmapWorkerTask task, @Nullable Bitmap bitmap) {
+        }
+
+        /**
+         * @return Always returns false, prefetches are abandoned when tasks should exit early.
+         */
+        @Override
+        public boolean isWaiting(BitmapWorkerTask task) {
+            return false;
+        }
+
+        @Override
+        public boolean isVisible(BitmapWorkerTask task) {
+            return false;
+        }
+
+        @Override
+        public boolean isFor(ImageView imageView) {
+            return false;
+        }
+
+        @Override
+        public void cancel() {
+            task.detach(this);
+        }
+    }
+
     /**
      * A custom Drawable that will be attached to the imageView while the work is in progress.
      * Contains a reference to the actual worker task, so that it can be stopped if a new binding is
@@ -739,6 +1327,10 @@ public abstract class ImageWorker {
      * @param bitmap
      */
     private void setImageBitmap(ImageView imageView, Bitmap bitmap, LoadImageCallback callback) {
+        final BitmapPool bitmapPool = getBitmapPool();
+        if (bitmapPool != null) {
+            bitmapPool.acquire(bitmap);
+        }
         if (mFadeInBitmap) {
             Drawable currentDrawable = imageView.getDrawable();
             Drawable newDrawable = new BitmapDrawable(mResources, bitmap);
@@ -764,19 +1356,37 @@ public abstract class ImageWorker {
             });
             newDrawableAnimator.start();
         } else {
+            Drawable previousDrawable = imageView.getDrawable();
             imageView.setImageDrawable(new BitmapDrawable(mResources, bitmap));
+            releaseBitmaps(previousDrawable);
             if (callback != null) {
                 callback.onDone();
             }
         }
     }
 
+    /**
+     * Pause the start of queued work, f.e. while a list is flung. Work in progress is not affected.
+     * <p>
+     * Must be called on the main thread. When the work is resumed, the visibility of the tasks in
+     * progress is updated, so the images left on screen after a scroll are loaded first.
+     */
     public void setPauseWork(boolean pauseWork) {
-        synchronized (mPauseWorkLock) {
-            mPauseWork = pauseWork;
-            if (!mPauseWork) {
-                mPauseWorkLock.notifyAll();
-            }
+        mPauseWork = pauseWork;
+        if (!pauseWork) {
+            updateTaskVisibility();
+        }
+        mScheduler.setPaused(pauseWork);
+    }
+
+    /** Update the visibility of the tasks in progress. Must be called on the main thread. */
+    private void updateTaskVisibility() {
+        List<BitmapWorkerTask> tasks;
+        synchronized (mInFlightTasks) {
+            tasks = new ArrayList<>(mInFlightTasks.values());
+        }
+        for (BitmapWorkerTask task : tasks) {
+            task.updateVisibility();
         }
     }
 
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.widget;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import uk.org.ngo.squeezer.R;
+import uk.org.ngo.squeezer.util.ImageWorker;
+
+/**
+ * Prefetches the artwork of the rows which are about to be scrolled in to view, so it's in the
+ * caches when the rows are bound.
+ * <p>
+ * The number of rows to prefetch follows the scroll speed. When the scroll direction changes, the
+ * prefetches in the old direction are cancelled. The size of the artwork is taken from the
+ * {@code R.id.icon} view of the rows on screen, so nothing is prefetched if the rows don't show
+ * artwork.
+ */
+public class ArtworkPrefetcher extends RecyclerView.OnScrollListener {
+
+    /** Minimum number of rows to prefetch. */
+    private static final int MIN_ROWS = 2;
+
+    /** Maximum number of rows to prefetch. */
+    private static final int MAX_ROWS = 10;
+
+    /** Prefetch the rows which will be scrolled in to view within this time at the current speed. */
+    private static final int LOOKAHEAD_MS = 1000;
+
+    /** Supplies the artwork of the items in the list. */
+    public interface ArtworkSource {
+        /**
+         * @return The artwork of the item at the supplied position, or null if the item has no
+         *     artwork, or it's not loaded yet. Must not order items from the server.
+         */
+        @Nullable
+        Object getArtwork(int position);
+    }
+
+    private final ImageWorker imageWorker;
+    private final ArtworkSource source;
+
+    /** Prefetches in progress by adapter position. */
+    private final SparseArray<ImageWorker.Prefetch> prefetches = new SparseArray<>();
+
+    /** 1 when scrolling towards the end of the list, -1 when scrolling towards the start. */
+    private int direction;
+
+    /** Smoothed scroll speed, in pixels per millisecond. */
+    private float speed;
+
+    private long lastScrollTime;
+
+    public ArtworkPrefetcher(@NonNull ImageWorker imageWorker, @NonNull ArtworkSource source) {
+        this.imageWorker = imageWorker;
+        this.source = source;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        // Called with no movement after layout
+        if (dy == 0) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        int newDirection = (dy > 0) ? 1 : -1;
+        if (newDirection != direction) {
+            cancel();
+            direction = newDirection;
+        } else if (now > lastScrollTime) {
+            float currentSpeed = (float) Math.abs(dy) / (now - lastScrollTime);
+            speed = (speed + currentSpeed) / 2;
+        }
+        lastScrollTime = now;
+
+        prefetch(recyclerView);
+    }
+
+    /**
+     * Cancel the prefetches in progress, f.e. when the items of the list are replaced.
+     */
+    public void cancel() {
+        for (int i = 0; i < prefetches.size(); i++) {
+            prefetches.valueAt(i).cancel();
+        }
+        prefetches.clear();
+        direction = 0;
+        speed = 0;
+    }
+
+    private void prefetch(RecyclerView recyclerView) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        View row = null;
+        View icon = null;
+        for (int i = 0; i < layoutManager.getChildCount() && icon == null; i++) {
+            row = layoutManager.getChildAt(i);
+            icon = (row != null) ? row.findViewById(R.id.icon) : null;
+            if (icon != null && (!icon.isShown() || icon.getWidth() == 0 || icon.getHeight() == 0)) {
+                icon = null;
+            }
+        }
+        if (icon == null) {
+            return;
+        }
+
+        int rowHeight = Math.max(1, layoutManager.getDecoratedMeasuredHeight(row));
+        int rows = Math.max(MIN_ROWS, Math.min(MAX_ROWS, (int) Math.ceil(speed * LOOKAHEAD_MS / rowHeight)));
+        int spanCount = (layoutManager instanceof GridLayoutManager) ? ((GridLayoutManager) layoutManager).getSpanCount() : 1;
+        int count = rows * spanCount;
+
+        // Rows which are scrolled in to view load their own artwork, so forget the prefetches
+        // for them. Prefetch the nearest rows last, so they're loaded first.
+        if (direction > 0) {
+            int start = last + 1;
+            int end = Math.min(start + count, layoutManager.getItemCount());
+            forgetBefore(start);
+            for (int position = end - 1; position >= start; position--) {
+                prefetch(position, icon);
+            }
+        } else {
+            int end = first;
+            int start = Math.max(0, end - count);
+            forgetFrom(end);
+            for (int position = start; position < end; position++) {
+                prefetch(position, icon);
+            }
+        }
+    }
+
+    private void prefetch(int position, View icon) {
+        if (prefetches.get(position) != null) {
+            return;
+        }
+        ImageWorker.Prefetch prefetch = imageWorker.prefetch(source.getArtwork(position), icon.getWidth(), icon.getHeight());
+        if (prefetch != null) {
+            prefetches.put(position, prefetch);
+        }
+    }
+
+    private void forgetBefore(int position) {
+        while (prefetches.size() > 0 && prefetches.keyAt(0) < position) {
+            prefetches.valueAt(0).cancel();
+            prefetches.removeAt(0);
+        }
+    }
+
+    private void forgetFrom(int position) {
+        while (prefetches.size() > 0 && prefetches.keyAt(prefetches.size() - 1) >= position) {
+            prefetches.valueAt(prefetches.size() - 1).cancel();
+            prefetches.removeAt(prefetches.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.framework;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests the shifting of items across the pages of {@link ItemPages}, as done by the item
+ * operations of {@link ItemAdapter}, against a plain list.
+ */
+public class ItemPagesTest extends TestCase {
+    private static final int PAGE_SIZE = 4;
+    private static final int COUNT = 22;
+
+    private ItemPages<String> pages;
+
+    /** The expected items. */
+    private List<String> list;
+
+    @Override
+    protected void setUp() {
+        pages = new ItemPages<>(PAGE_SIZE, String[]::new);
+        list = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            list.add("item" + i);
+        }
+        pages.setItems(0, list);
+    }
+
+    public void testSetItems() {
+        assertEquals(6, pages.size());
+        assertEquals(0, pages.firstPage());
+        assertEquals(5, pages.lastPage());
+        assertItems();
+        assertNull(pages.get(COUNT));
+        assertNull(pages.get(100));
+    }
+
+    public void testRemoveAcrossPages() {
+        assertEquals(Collections.emptySet(), remove(1));
+        assertItems();
+
+        // The first item of a page
+        assertEquals(Collections.emptySet(), remove(8));
+        assertItems();
+
+        // The last item
+        assertEquals(Collections.emptySet(), remove(list.size() - 1));
+        assertItems();
+    }
+
+    public void testInsertAcrossPages() {
+        assertEquals(Collections.emptySet(), insert(2, "new1"));
+        assertItems();
+
+        // Before the first item of a page, and in the second half of the ring of the last page
+        assertEquals(Collections.emptySet(), insert(4, "new2"));
+        assertEquals(Collections.emptySet(), insert(list.size() - 1, "new3"));
+        assertItems();
+
+        // At the end, in to a new slot
+        assertEquals(Collections.emptySet(), insert(list.size(), "new4"));
+        assertItems();
+    }
+
+    public void testInsertInToEmptyList() {
+        pages.clear();
+        list.clear();
+
+        assertEquals(Collections.emptySet(), insert(0, "new1"));
+        assertTrue(pages.isResident(0));
+        assertEquals(Collections.emptySet(), insert(0, "new2"));
+        assertItems();
+    }
+
+    public void testInsertAtPageBoundary() {
+        // Fill the last page, so the next item is the first of a new page
+        insert(list.size(), "new1");
+        insert(list.size(), "new2");
+        assertEquals(0, list.size() % PAGE_SIZE);
+        assertFalse(pages.isResident(pages.pageNumber(list.size())));
+
+        assertEquals(Collections.emptySet(), insert(list.size(), "new3"));
+        assertTrue(pages.isResident(pages.pageNumber(list.size() - 1)));
+        assertItems();
+
+        // The last item moves on to a new page
+        insert(list.size(), "new4");
+        insert(list.size(), "new5");
+        insert(list.size(), "new6");
+        assertEquals(Collections.emptySet(), insert(0, "new7"));
+        assertEquals("new6", pages.get(list.size() - 1));
+        assertItems();
+    }
+
+    public void testInsertInToEvictedPage() {
+        pages.evict(2);
+
+        // The other items of the page are not known, so the page is ordered again
+        assertEquals(set(2, 3), insert(9, "new"));
+        assertFalse(pages.isResident(2));
+        assertItems();
+    }
+
+    public void testMoveAcrossPages() {
+        assertEquals(Collections.emptySet(), move(1, 17));
+        assertItems();
+
+        assertEquals(Collections.emptySet(), move(18, 3));
+        assertItems();
+
+        assertEquals(Collections.emptySet(), move(5, 6));
+        assertItems();
+    }
+
+    public void testRemoveWithEvictedPage() {
+        // Page 2 holds items 8-11
+        pages.evict(2);
+
+        // Page 1 should receive item 8, which isn't resident. The pages after the evicted page
+        // have all their items.
+        assertEquals(set(1), remove(0));
+        assertFalse(pages.isResident(1));
+        assertItems();
+    }
+
+    public void testInsertWithEvictedPage() {
+        pages.evict(2);
+
+        // Page 3 should receive item 11 from the evicted page
+        assertEquals(set(3), insert(0, "new"));
+        assertFalse(pages.isResident(3));
+        assertItems();
+    }
+
+    public void testMoveWithEvictedPage() {
+        pages.evict(2);
+
+        // The item moves from a resident page past the evicted page
+        assertEquals(set(1), move(5, 14));
+        assertItems();
+
+        // The item moves from the evicted page, so it's unknown at its new position
+        pages.setItems(0, list);
+        pages.evict(2);
+        assertEquals(set(0), move(9, 2));
+        assertItems();
+    }
+
+    public void testShiftsMatchList() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextInt(10) == 0) {
+                // Receive all pages again, and evict one
+                pages.clear();
+                pages.setItems(0, list);
+                pages.evict(random.nextInt(pages.pageNumber(list.size() - 1) + 1));
+            }
+
+            int op = random.nextInt(3);
+            if (op == 0 && list.size() > 1) {
+                remove(random.nextInt(list.size()));
+            } else if (op == 1) {
+                insert(random.nextInt(list.size() + 1), "new" + i);
+            } else {
+                move(random.nextInt(list.size()), random.nextInt(list.size()));
+            }
+            assertItems();
+        }
+    }
+
+    /** Remove an item like {@link ItemAdapter#removeItem(int)}, and evict the incomplete pages. */
+    private Set<Integer> remove(int position) {
+        Set<Integer> incomplete = new HashSet<>();
+        pages.shiftDown(position, list.size() - 1, incomplete);
+        pages.set(list.size() - 1, null);
+        list.remove(position);
+        return evict(incomplete);
+    }
+
+    /** Insert an item like {@link ItemAdapter#insertItem}, and evict the incomplete pages. */
+    private Set<Integer> insert(int position, String item) {
+        Set<Integer> incomplete = new HashSet<>();
+        pages.insert(position, item, list.size(), incomplete);
+        list.add(position, item);
+        return evict(incomplete);
+    }
+
+    /** Move an item like {@link ItemAdapter#moveItem(int, int)}, and evict the incomplete pages. */
+    private Set<Integer> move(int fromPosition, int toPosition) {
+        String item = pages.get(fromPosition);
+        Set<Integer> incomplete = new HashSet<>();
+        if (fromPosition < toPosition) {
+            pages.shiftDown(fromPosition, toPosition, incomplete);
+        } else if (fromPosition > toPosition) {
+            pages.shiftUp(toPosition, fromPosition, incomplete);
+        }
+        if (pages.set(toPosition, item) && item == null) {
+            incomplete.add(pages.pageNumber(toPosition));
+        }
+        list.add(toPosition, list.remove(fromPosition));
+        return evict(incomplete);
+    }
+
+    private Set<Integer> evict(Set<Integer> incomplete) {
+        for (int pageNumber : incomplete) {
+            pages.evict(pageNumber);
+        }
+        return incomplete;
+    }
+
+    /** Assert that every resident page has the expected items, and nothing after the last item. */
+    private void assertItems() {
+        for (int position = 0; position < list.size() + PAGE_SIZE; position++) {
+            if (pages.isResident(pages.pageNumber(position))) {
+                String expected = (position < list.size()) ? list.get(position) : null;
+                assertEquals("position " + position, expected, pages.get(position));
+            }
+        }
+    }
+
+    private static Set<Integer> set(Integer... pageNumbers) {
+        return new HashSet<>(Arrays.asList(pageNumbers));
+    }
+}
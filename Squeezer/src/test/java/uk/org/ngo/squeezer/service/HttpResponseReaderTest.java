@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HttpResponseReaderTest extends TestCase {
+    private final List<String> received = new ArrayList<>();
+    private final JsonFramer jsonFramer = new JsonFramer(received::add);
+
+    public void testContentLengthIsBytes() throws Exception {
+        String json = largeMessage(5000);
+        byte[] content = json.getBytes(StandardCharsets.UTF_8);
+        assertTrue("Payload must contain multibyte characters", content.length > json.length());
+
+        HttpResponseReader reader = reader(7, contentLengthResponse(content), contentLengthResponse(content));
+        for (int i = 0; i < 2; i++) {
+            reader.readHeaders();
+            assertEquals(200, reader.getStatus());
+            assertFalse(reader.isChunked());
+            assertEquals(content.length, reader.getContentLength());
+            reader.readContent(jsonFramer);
+        }
+
+        assertEquals(2, received.size());
+        assertEquals(json, received.get(0));
+        assertEquals(json, received.get(1));
+    }
+
+    public void testChunkedSplitsMultibyteCharacters() throws Exception {
+        String first = largeMessage(3000);
+        String second = "[{\"channel\":\"/slim/request\",\"data\":{\"text\":\"]}\\\"{[ \u00fcn\u00efc\u00f8d\u00e9 \u97f3\u697d \ud83c\udfb5\"}}]";
+        byte[] content = (first + "\r\n" + second).getBytes(StandardCharsets.UTF_8);
+
+        // Odd sized chunks, which split both the JSON values and the multibyte characters
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        for (int pos = 0; pos < content.length; pos += 1001) {
+            int size = Math.min(1001, content.length - pos);
+            response.write((Integer.toHexString(size) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            response.write(content, pos, size);
+            response.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        response.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        HttpResponseReader reader = reader(13, response.toByteArray());
+        reader.readHeaders();
+        assertEquals(200, reader.getStatus());
+        assertTrue(reader.isChunked());
+        reader.readContent(jsonFramer);
+
+        assertFalse(jsonFramer.hasPartialValue());
+        assertEquals(2, received.size());
+        assertEquals(first, received.get(0));
+        assertEquals(second, received.get(1));
+    }
+
+    public void testValueIsDeliveredWhenComplete() throws Exception {
+        byte[] content = "[{\"a\":\"\u00e5\"}][{\"b\":".getBytes(StandardCharsets.UTF_8);
+        jsonFramer.feed(ByteBuffer.wrap(content));
+        assertEquals(1, received.size());
+        assertEquals("[{\"a\":\"\u00e5\"}]", received.get(0));
+        assertTrue(jsonFramer.hasPartialValue());
+
+        jsonFramer.feed(ByteBuffer.wrap("1}]".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, received.size());
+        assertEquals("[{\"b\":1}]", received.get(1));
+        assertFalse(jsonFramer.hasPartialValue());
+    }
+
+    public void testInvalidTopLevelValue() {
+        try {
+            jsonFramer.feed(ByteBuffer.wrap("  x".getBytes(StandardCharsets.UTF_8)));
+            fail("Expected ParseException");
+        } catch (ParseException e) {
+            assertEquals(2, e.getErrorOffset());
+        }
+    }
+
+    public void testTruncatedContent() throws Exception {
+        byte[] content = largeMessage(100).getBytes(StandardCharsets.UTF_8);
+        byte[] response = contentLengthResponse(content);
+        byte[] truncated = new byte[response.length - 10];
+        System.arraycopy(response, 0, truncated, 0, truncated.length);
+
+        HttpResponseReader reader = reader(64, truncated);
+        reader.readHeaders();
+        try {
+            reader.readContent(jsonFramer);
+            fail("Expected EOFException");
+        } catch (EOFException e) {
+            assertTrue(received.isEmpty());
+        }
+    }
+
+    public void testErrorPageIsSkipped() throws Exception {
+        byte[] html = "<html><body><h1>401 Authorization Required</h1> {[\"</body></html>".getBytes(StandardCharsets.US_ASCII);
+        byte[] unauthorized = response("HTTP/1.1 401 Authorization Required\r\n" +
+                "Content-Type: text/html\r\n" +
+                "Content-Length: " + html.length + "\r\n" +
+                "\r\n", html);
+        byte[] chunkedUnauthorized = response("HTTP/1.1 401 Authorization Required\r\n" +
+                "Content-Type: text/html\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                Integer.toHexString(html.length) + "\r\n", html, "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        String json = largeMessage(10);
+        byte[] ok = contentLengthResponse(json.getBytes(StandardCharsets.UTF_8));
+
+        HttpResponseReader reader = reader(5, unauthorized, chunkedUnauthorized, ok);
+        for (int i = 0; i < 2; i++) {
+            reader.readHeaders();
+            assertEquals(401, reader.getStatus());
+            reader.skipContent();
+        }
+        assertTrue(received.isEmpty());
+
+        // The stream is still in sync
+        reader.readHeaders();
+        assertEquals(200, reader.getStatus());
+        reader.readContent(jsonFramer);
+        assertEquals(1, received.size());
+        assertEquals(json, received.get(0));
+    }
+
+    /** @return A bayeux message with an item loop of the given size, with non-ASCII titles */
+    private static String largeMessage(int items) {
+        StringBuilder sb = new StringBuilder("[{\"channel\":\"/slim/request\",\"data\":{\"count\":")
+                .append(items).append(",\"item_loop\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i)
+                    .append(",\"text\":\"\u00c5ngstr\u00f6m Caf\u00e9 N\u00ba").append(i)
+                    .append(" \u4ea4\u97ff\u66f2\u7b2c").append(i).append("\u756a \u2014 \\\"Live\\\" \ud83c\udfb6\"}");
+        }
+        return sb.append("]}}]").toString();
+    }
+
+    private static byte[] response(String headers, byte[]... content) {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.write(headers.getBytes(StandardCharsets.US_ASCII), 0, headers.length());
+        for (byte[] bytes : content) {
+            response.write(bytes, 0, bytes.length);
+        }
+        return response.toByteArray();
+    }
+
+    private static byte[] contentLengthResponse(byte[] content) {
+        byte[] headers = ("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: " + content.length + "\r\n" +
+                "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] response = new byte[headers.length + content.length];
+        System.arraycopy(headers, 0, response, 0, headers.length);
+        System.arraycopy(content, 0, response, headers.length, content.length);
+        return response;
+    }
+
+    /** @return A reader for the given responses, which are read at most maxRead bytes at a time */
+    private static HttpResponseReader reader(int maxRead, byte[]... responses) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] response : responses) {
+            stream.write(response, 0, response.length);
+        }
+        return new HttpResponseReader(new SlowChannel(stream.toByteArray(), maxRead), 256);
+    }
+
+    private static class SlowChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private final int maxRead;
+
+        private SlowChannel(byte[] data, int maxRead) {
+            this.data = ByteBuffer.wrap(data);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            int bytes = Math.min(maxRead, Math.min(dst.remaining(), data.remaining()));
+            ByteBuffer slice = data.duplicate();
+            slice.limit(slice.position() + bytes);
+            dst.put(slice);
+            data.position(data.position() + bytes);
+            return bytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
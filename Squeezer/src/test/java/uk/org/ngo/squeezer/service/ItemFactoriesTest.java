@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import androidx.fragment.app.Fragment.InstantiationException;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Tests of creating items from item records.
+ * <p>
+ * See ItemFactoriesBenchmark in the instrumentation tests, for timings of the factories of the
+ * real item types.
+ */
+public class ItemFactoriesTest extends TestCase {
+
+    public static class TestItem {
+        final String id;
+        final String name;
+        final int count;
+
+        public TestItem(Map<String, Object> record) {
+            id = (String) record.get("id");
+            name = (String) record.get("name");
+            count = (Integer) record.get("count");
+        }
+    }
+
+    public static class NoRecordConstructor {
+    }
+
+    public void testReflectiveFactory() {
+        Function<Map<String, Object>, TestItem> factory = ItemFactories.reflective(TestItem.class);
+        TestItem item = factory.apply(record(1));
+        assertEquals("1", item.id);
+        assertEquals("Item 1", item.name);
+        assertEquals(1, item.count);
+    }
+
+    public void testUnregisteredTypeUsesRecordConstructor() {
+        Function<Map<String, Object>, TestItem> factory = ItemFactories.get(TestItem.class);
+        TestItem item = factory.apply(record(2));
+        assertEquals("2", item.id);
+        assertEquals(2, item.count);
+    }
+
+    public void testTypeWithoutRecordConstructor() {
+        try {
+            ItemFactories.reflective(NoRecordConstructor.class);
+            fail("Expected InstantiationException");
+        } catch (InstantiationException e) {
+            assertTrue(e.getMessage().contains(NoRecordConstructor.class.getName()));
+        }
+    }
+
+    private static Map<String, Object> record(int i) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", String.valueOf(i));
+        record.put("name", "Item " + i);
+        record.put("count", i);
+        return record;
+    }
+}
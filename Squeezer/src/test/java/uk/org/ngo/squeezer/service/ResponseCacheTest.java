@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
+import uk.org.ngo.squeezer.model.Player;
+
+public class ResponseCacheTest extends TestCase {
+    private static final long MINUTE = 60_000L;
+
+    private long now;
+    private ResponseCache cache;
+
+    private final Player player1 = player("00:04:20:00:00:01");
+    private final Player player2 = player("00:04:20:00:00:02");
+
+    @Override
+    protected void setUp() {
+        now = 1_000_000L;
+        cache = new ResponseCache(64 * 1024, () -> now, false);
+    }
+
+    public void testIsCacheable() {
+        assertTrue(cache.isCacheable(request(null, 0, "browselibrary", "items")));
+        assertTrue(cache.isCacheable(request(player1, 0, "status")));
+        assertFalse(cache.isCacheable(request(null, 0, "players")));
+        assertFalse(cache.isCacheable(request(player1, SlimClient.CURRENT, "status")));
+        assertFalse(cache.isCacheable(request(null, SlimClient.ALL_ITEMS, "browselibrary", "items")));
+    }
+
+    public void testHitUntilExpired() throws IOException {
+        put(request(null, 0, "browselibrary", "items"), "albums");
+
+        now += 5 * MINUTE - 1;
+        assertEquals("albums", get(request(null, 0, "browselibrary", "items")));
+
+        now += 1;
+        assertNull(get(request(null, 0, "browselibrary", "items")));
+    }
+
+    public void testContainsUntilExpired() throws IOException {
+        assertFalse(cache.contains(request(null, 0, "browselibrary", "items")));
+        put(request(null, 0, "browselibrary", "items"), "albums");
+
+        now += 5 * MINUTE - 1;
+        assertTrue(cache.contains(request(null, 0, "browselibrary", "items")));
+        assertFalse(cache.contains(request(null, 100, "browselibrary", "items")));
+
+        now += 1;
+        assertFalse(cache.contains(request(null, 0, "browselibrary", "items")));
+    }
+
+    public void testTimeToLiveByCommand() throws IOException {
+        put(request(null, 0, "favorites", "items"), "favorites");
+        put(request(null, 0, "radios"), "radios");
+
+        now += MINUTE;
+        assertNull(get(request(null, 0, "favorites", "items")));
+        assertEquals("radios", get(request(null, 0, "radios")));
+    }
+
+    public void testKeyIncludesPlayerParametersAndPage() throws IOException {
+        put(request(player1, 0, "browselibrary", "items"), "albums");
+
+        assertEquals("albums", get(request(player1, 0, "browselibrary", "items")));
+        assertNull(get(request(player2, 0, "browselibrary", "items")));
+        assertNull(get(request(player1, 100, "browselibrary", "items")));
+        BaseClient.BrowseRequest<Object> artists = request(player1, 0, "browselibrary", "items");
+        artists.param("mode", "artists");
+        assertNull(get(artists));
+    }
+
+    public void testResponseIsNotStoredAfterInvalidation() throws IOException {
+        BaseClient.BrowseRequest<Object> request = request(null, 0, "browselibrary", "items");
+        request.cacheGeneration = cache.generation();
+
+        // The library changes while the request is in flight
+        cache.invalidate("browselibrary");
+        put(request, "albums");
+
+        assertNull(get(request(null, 0, "browselibrary", "items")));
+    }
+
+    public void testResponseIsStoredAfterUnrelatedInvalidation() throws IOException {
+        BaseClient.BrowseRequest<Object> request = request(null, 0, "browselibrary", "items");
+        request.cacheGeneration = cache.generation();
+
+        // Not a cached command, so it doesn't change the generation
+        cache.invalidate("playlist");
+        put(request, "albums");
+
+        assertEquals("albums", get(request(null, 0, "browselibrary", "items")));
+    }
+
+    public void testInvalidateCommand() throws IOException {
+        put(request(null, 0, "browselibrary", "items"), "albums");
+        put(request(null, 0, "favorites", "items"), "favorites");
+
+        cache.invalidate("browselibrary");
+
+        assertNull(get(request(null, 0, "browselibrary", "items")));
+        assertEquals("favorites", get(request(null, 0, "favorites", "items")));
+    }
+
+    public void testInvalidatePlayer() throws IOException {
+        put(request(player1, 0, "status"), "playlist1");
+        put(request(player2, 0, "status"), "playlist2");
+
+        cache.invalidate("status", player1);
+
+        assertNull(get(request(player1, 0, "status")));
+        assertEquals("playlist2", get(request(player2, 0, "status")));
+    }
+
+    public void testInvalidateChangedBy() throws IOException {
+        put(request(null, 0, "favorites", "items"), "favorites");
+        put(request(null, 0, "browselibrary", "items"), "albums");
+
+        cache.invalidateChangedBy("jivefavorites");
+
+        assertNull(get(request(null, 0, "favorites", "items")));
+        assertEquals("albums", get(request(null, 0, "browselibrary", "items")));
+    }
+
+    public void testClear() throws IOException {
+        BaseClient.BrowseRequest<Object> inFlight = request(player1, 0, "status");
+        inFlight.cacheGeneration = cache.generation();
+        put(request(null, 0, "browselibrary", "items"), "albums");
+
+        cache.clear();
+        put(inFlight, "playlist");
+
+        assertNull(get(request(null, 0, "browselibrary", "items")));
+        assertNull(get(request(player1, 0, "status")));
+    }
+
+    public void testSizeIsBounded() throws IOException {
+        cache = new ResponseCache(1024, () -> now, false);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            large.append('x');
+        }
+
+        put(request(null, 0, "browselibrary", "items"), large.toString());
+        put(request(null, 100, "browselibrary", "items"), large.toString());
+        put(request(null, 200, "browselibrary", "items"), large.toString());
+
+        // The least recently used response is evicted
+        assertNull(get(request(null, 0, "browselibrary", "items")));
+        assertNotNull(get(request(null, 200, "browselibrary", "items")));
+    }
+
+    private void put(BaseClient.BrowseRequest<Object> request, String text) throws IOException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", text);
+        cache.put(request, ResponseFormat.encode(data));
+    }
+
+    private String get(BaseClient.BrowseRequest<Object> request) {
+        Map<String, Object> data = cache.get(request);
+        return (data != null) ? (String) data.get("text") : null;
+    }
+
+    private static BaseClient.BrowseRequest<Object> request(Player player, int start, String... cmd) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("menu", "1");
+        return new BaseClient.BrowseRequest<>(player, cmd, params, start, 100, new IServiceItemListCallback<Object>() {
+            @Override
+            public void onItemsReceived(int count, int start, Map<String, Object> parameters, List<Object> items, Class<Object> dataType) {
+            }
+
+            @Override
+            public Object getClient() {
+                return null;
+            }
+        });
+    }
+
+    private static Player player(String id) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("playerid", id);
+        record.put("name", id);
+        return new Player(record);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2024 Kurt Aaholst <kaaholst@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ResponseFormatTest extends TestCase {
+
+    public void testRoundTrip() throws IOException {
+        Map<String, Object> data = response();
+
+        Map<String, Object> decoded = ResponseFormat.decode(ResponseFormat.encode(data));
+
+        assertEquals(3L, decoded.get("count"));
+        assertEquals(0, decoded.get("offset"));
+        assertEquals(1.5, decoded.get("rate"));
+        assertEquals(Boolean.TRUE, decoded.get("showBigArtwork"));
+        assertTrue(decoded.containsKey("title"));
+        assertNull(decoded.get("title"));
+        assertEquals("\u00c6bler \u266b", ((Map<?, ?>) decoded.get("window")).get("text"));
+
+        Object[] items = (Object[]) decoded.get("item_loop");
+        assertEquals(3, items.length);
+        for (int i = 0; i < items.length; i++) {
+            Map<?, ?> item = (Map<?, ?>) items[i];
+            assertEquals("Album " + i, item.get("text"));
+            assertEquals(String.valueOf(i), ((Map<?, ?>) item.get("params")).get("album_id"));
+        }
+    }
+
+    public void testNestedArrays() throws IOException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("cmd", new Object[]{"browselibrary", new Object[]{"items", new Object[0], null}, 7L});
+
+        Object[] cmd = (Object[]) ResponseFormat.decode(ResponseFormat.encode(data)).get("cmd");
+
+        assertEquals(3, cmd.length);
+        assertEquals("browselibrary", cmd[0]);
+        Object[] nested = (Object[]) cmd[1];
+        assertEquals("items", nested[0]);
+        assertEquals(0, ((Object[]) nested[1]).length);
+        assertNull(nested[2]);
+        assertEquals(7L, cmd[2]);
+    }
+
+    public void testKeysAreWrittenOnce() throws IOException {
+        Object[] items = new Object[100];
+        for (int i = 0; i < items.length; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("a_rather_long_key_name", i);
+            items[i] = item;
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("item_loop", items);
+
+        byte[] bytes = ResponseFormat.encode(data);
+
+        assertEquals(1, occurrences(bytes, "a_rather_long_key_name".getBytes()));
+        Object[] decoded = (Object[]) ResponseFormat.decode(bytes).get("item_loop");
+        for (int i = 0; i < decoded.length; i++) {
+            assertEquals(i, ((Map<?, ?>) decoded[i]).get("a_rather_long_key_name"));
+        }
+    }
+
+    public void testManyKeys() throws IOException {
+        // More than 127 keys, so back-references take more than one byte
+        Map<String, Object> data = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            data.put("key" + i, "value" + i);
+        }
+        Map<String, Object> nested = new HashMap<>(data);
+        data.put("nested", nested);
+
+        Map<String, Object> decoded = ResponseFormat.decode(ResponseFormat.encode(data));
+
+        assertEquals(301, decoded.size());
+        assertEquals(nested, decoded.get("nested"));
+        assertEquals("value299", decoded.get("key299"));
+    }
+
+    public void testTruncatedInput() throws IOException {
+        byte[] bytes = ResponseFormat.encode(response());
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                ResponseFormat.decode(Arrays.copyOf(bytes, length));
+                fail("Expected IOException for " + length + " of " + bytes.length + " bytes");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    public void testCorruptInput() throws IOException {
+        byte[] bytes = ResponseFormat.encode(response());
+        for (int i = 0; i < bytes.length; i++) {
+            for (int b : new int[]{0x00, 0x07, 0x7f, 0x80, 0xff}) {
+                byte[] corrupt = bytes.clone();
+                corrupt[i] = (byte) b;
+                try {
+                    ResponseFormat.decode(corrupt);
+                } catch (IOException expected) {
+                }
+            }
+        }
+    }
+
+    public void testHugeSizeIsNotAllocated() {
+        // An array of Integer.MAX_VALUE elements, followed by nothing
+        byte[] bytes = {6, 1, 0, 1, 'a', 7, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07};
+        try {
+            ResponseFormat.decode(bytes);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testInvalidKeyReference() {
+        // A map with one key, which refers to the 5th key, which hasn't been written
+        byte[] bytes = {6, 1, 5, 0};
+        try {
+            ResponseFormat.decode(bytes);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testNotAMap() {
+        byte[] bytes = {1, 1, 'a'};
+        try {
+            ResponseFormat.decode(bytes);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static Map<String, Object> response() {
+        Object[] items = new Object[3];
+        for (int i = 0; i < items.length; i++) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("album_id", String.valueOf(i));
+            Map<String, Object> item = new HashMap<>();
+            item.put("text", "Album " + i);
+            item.put("params", params);
+            items[i] = item;
+        }
+        Map<String, Object> window = new HashMap<>();
+        window.put("text", "\u00c6bler \u266b");
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("count", 3L);
+        data.put("offset", 0);
+        data.put("rate", 1.5);
+        data.put("showBigArtwork", true);
+        data.put("title", null);
+        data.put("window", window);
+        data.put("item_loop", items);
+        return data;
+    }
+
+    private static int occurrences(byte[] bytes, byte[] pattern) {
+        int count = 0;
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}